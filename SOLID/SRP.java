@@ -74,6 +74,13 @@ class UserOutputHandler{
     }
 }
 
+// metrics sink for compiler runs(e.g. JudgeAnalytics.getInstance().metrics()::record)
+interface CompilerMetrics{
+    CompilerMetrics NONE = (problemID, language, elapsedNanos, passed) -> {};
+
+    void record(String problemID, String language, long elapsedNanos, boolean passed);
+}
+
 class TUFCompiler{
     // has-a relationship
     DriverCodeGenerator driverCodeGenerator;
@@ -81,23 +88,39 @@ class TUFCompiler{
     TestRunner testRunner;
     DatabaseManager databaseManager;
     UserOutputHandler userOutputHandler;
+    CompilerMetrics compilerMetrics;
 
     public TUFCompiler(){
+        this(CompilerMetrics.NONE);
+    }
+
+    public TUFCompiler(CompilerMetrics compilerMetrics){
         // can be injected using dependency injection instead of object creation
         this.driverCodeGenerator = new DriverCodeGenerator();
         this.syntaxChecker = new SyntaxChecker();
         this.testRunner = new TestRunner();
         this.databaseManager = new DatabaseManager();
         this.userOutputHandler = new UserOutputHandler();
+        this.compilerMetrics = compilerMetrics;
     }
 
     // coordinaor service that combines classes that follow SRP
     public void runCompiler(String language, String code, String problemID, String submissionID){
-        this.driverCodeGenerator.generateDriverCode(language);
-        this.syntaxChecker.checkLanguageSyntax(language, code);
-        this.testRunner.runTests(language, code, problemID);
-        this.databaseManager.connectToDB();
-        this.userOutputHandler.generateStdOutput(submissionID);
+        long start = System.nanoTime();
+        boolean passed = false;
+
+        try{
+            this.driverCodeGenerator.generateDriverCode(language);
+            this.syntaxChecker.checkLanguageSyntax(language, code);
+            this.testRunner.runTests(language, code, problemID);
+            this.databaseManager.connectToDB();
+            this.userOutputHandler.generateStdOutput(submissionID);
+
+            passed = true;
+        } finally {
+            // only primitives and existing strings are passed, nothing allocated for recording.
+            this.compilerMetrics.record(problemID, language, System.nanoTime() - start, passed);
+        }
     }
 }
 
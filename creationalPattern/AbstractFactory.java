@@ -29,6 +29,10 @@ Cons:
 
 */
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
 // interface that helps in creating factory based on payment type
 interface PaymentGateway{
     void processPayment(double amount);
@@ -52,11 +56,21 @@ class StripeGateway implements PaymentGateway{
 }
 
 // Concrete Class
-class PayPalGateway implements PaymentGateway{
+    // stateful: every payment is built in a reusable request buffer, so instances are pooled instead of shared
+class PayPalGateway implements ResettableGateway{
+    private final StringBuilder request = new StringBuilder(256);
+
     @Override
     public void processPayment(double amount) {
+        request.append("intent=CAPTURE&amount=").append(amount);
+
         System.out.println("payment processing through paypal with amount:"+amount);
     }
+
+    @Override
+    public void reset() {
+        request.setLength(0);
+    }
 }
 
 // Concrete Class
@@ -68,8 +82,18 @@ class PayUGoGateway implements PaymentGateway{
 }
 
 
+// invoice whose template is already filled and only needs to be issued
+interface PreparedInvoice{
+    void issue();
+}
+
 interface Invoice{
     void generateInvoice();
+
+    // work that doesn't depend on the payment result, done while the payment is in flight
+    default PreparedInvoice prepare(double amount){
+        return this::generateInvoice;
+    }
 }
 
 class USInvoice implements Invoice{
@@ -78,6 +102,13 @@ class USInvoice implements Invoice{
     public void generateInvoice() {
         System.out.println("generating invoice for the US");
     }
+
+    @Override
+    public PreparedInvoice prepare(double amount) {
+        String text = "generating invoice for the US with amount:" + amount;
+
+        return () -> System.out.println(text);
+    }
 }
 
 class GSTInvoice implements Invoice{
@@ -87,74 +118,292 @@ class GSTInvoice implements Invoice{
         System.out.println("generating invoice for the india");
     }
 
+    @Override
+    public PreparedInvoice prepare(double amount) {
+        String text = "generating invoice for the india with amount:" + amount + " gst(18%):" + amount * 0.18;
+
+        return () -> System.out.println(text);
+    }
+
+}
+
+// In-process fake for tests: takes a configurable time to "process" a payment.
+class FakePaymentGateway implements PaymentGateway{
+    private final long latencyMillis;
+
+    public FakePaymentGateway(long latencyMillis){
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public void processPayment(double amount) {
+        try{
+            Thread.sleep(latencyMillis);
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("payment interrupted");
+        }
+
+        System.out.println("payment processing through fake gateway with amount:"+amount);
+    }
+}
+
+// gateways that keep per-payment state, they are pooled and reset before reuse instead of shared
+interface ResettableGateway extends PaymentGateway{
+    void reset();
+}
+
+enum Region{
+    INDIA, US
+}
+
+enum GatewayType{
+    PAYUGO("PayUGo"), RAZOR_PAY("Razor Pay"), STRIPE("Stripe"), PAYPAL("Paypal");
+
+    private static final GatewayType[] VALUES = values();
+
+    private final String label;
+
+    GatewayType(String label){
+        this.label = label;
+    }
+
+    // parse once and keep the enum, instead of comparing strings on every creation
+    public static GatewayType parse(String gatewayType){
+        for(GatewayType type: VALUES){
+            if(type.label.equalsIgnoreCase(gatewayType)){
+                return type;
+            }
+        }
+
+        throw new IllegalArgumentException("gateway type is not supported");
+    }
+}
+
+// lifecycle of the gateway instances handed out for a region and gateway type
+interface GatewayProvider{
+    PaymentGateway acquire();
+
+    void release(PaymentGateway gateway);
+}
+
+// stateless gateway: one instance shared by every checkout
+class SharedGateway implements GatewayProvider{
+    private final PaymentGateway gateway;
+
+    public SharedGateway(PaymentGateway gateway){
+        this.gateway = gateway;
+    }
+
+    @Override
+    public PaymentGateway acquire() {
+        return gateway;
+    }
+
+    @Override
+    public void release(PaymentGateway gateway) {}
+}
+
+// stateful gateway: idle instances are reused, new ones created when the pool is empty
+    // and extra ones dropped when it's full, so the pool never blocks a checkout.
+class PooledGateway implements GatewayProvider{
+    private final Supplier<? extends ResettableGateway> factory;
+
+    private final ArrayBlockingQueue<ResettableGateway> idle;
+
+    public PooledGateway(Supplier<? extends ResettableGateway> factory, int maxIdle){
+        this.factory = factory;
+        this.idle = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    @Override
+    public PaymentGateway acquire() {
+        ResettableGateway gateway = idle.poll();
+
+        return gateway != null ? gateway : factory.get();
+    }
+
+    @Override
+    public void release(PaymentGateway gateway) {
+        ResettableGateway resettable = (ResettableGateway)gateway;
+
+        resettable.reset();
+        idle.offer(resettable);
+    }
+}
+
+// Precomputed region x gateway table, unsupported combinations are null.
+class GatewayTable{
+    private static final GatewayProvider[][] providers = new GatewayProvider[Region.values().length][GatewayType.values().length];
+
+    static{
+        register(Region.INDIA, GatewayType.PAYUGO, new SharedGateway(new PayUGoGateway()));
+        register(Region.INDIA, GatewayType.RAZOR_PAY, new SharedGateway(new RazorPayGateway()));
+        register(Region.US, GatewayType.STRIPE, new SharedGateway(new StripeGateway()));
+        register(Region.US, GatewayType.PAYPAL, new PooledGateway(PayPalGateway::new, 16));
+    }
+
+    // register during start up only, lookups are not synchronized
+    public static void register(Region region, GatewayType type, GatewayProvider provider){
+        providers[region.ordinal()][type.ordinal()] = provider;
+    }
+
+    public static GatewayProvider lookup(Region region, GatewayType type){
+        GatewayProvider provider = providers[region.ordinal()][type.ordinal()];
+
+        if(provider == null){
+            throw new IllegalArgumentException("gateway type is not supported");
+        }
+
+        return provider;
+    }
 }
 
 // Maintaining a factory that operates factory for gateways based on the type through an interface
 interface RegionFactory{
-    PaymentGateway createPaymentGateway(String gatewayType);
+    // only shared gateways are handed out here, pooled ones have to be returned
+        // and are acquired and released through gatewayProvider(...) instead.
+    default PaymentGateway createPaymentGateway(String gatewayType){
+        GatewayProvider provider = gatewayProvider(GatewayType.parse(gatewayType));
+
+        if(!(provider instanceof SharedGateway)){
+            throw new UnsupportedOperationException("pooled gateway, use gatewayProvider(...) to acquire and release it");
+        }
+
+        return provider.acquire();
+    }
 
     Invoice createInvoice();
+
+    GatewayProvider gatewayProvider(GatewayType gatewayType);
 }   
 
 
 // Concrete factory
 class IndiaRegionFactory implements RegionFactory{
+    // invoice generators are stateless, one instance is reused
+    private static final Invoice invoice = new GSTInvoice();
 
-    @Override
-    public PaymentGateway createPaymentGateway(String gatewayType) {
-        if(gatewayType.equalsIgnoreCase("PayUGo")){
-            return new PayUGoGateway();
-        } else if(gatewayType.equalsIgnoreCase("Razor Pay")){
-            return new RazorPayGateway();
-        }
+    // Problem: string comparison and a new gateway on every call.
+    // public PaymentGateway createPaymentGateway(String gatewayType) {
+    //     if(gatewayType.equalsIgnoreCase("PayUGo")){
+    //         return new PayUGoGateway();
+    //     } else if(gatewayType.equalsIgnoreCase("Razor Pay")){
+    //         return new RazorPayGateway();
+    //     }
 
-        throw new IllegalArgumentException("gateway type is not supported");
+    //     throw new IllegalArgumentException("gateway type is not supported");
+    // }
+
+    @Override
+    public GatewayProvider gatewayProvider(GatewayType gatewayType) {
+        return GatewayTable.lookup(Region.INDIA, gatewayType);
     }
 
     @Override
     public Invoice createInvoice() {
-        return new GSTInvoice();
+        return invoice;
     }
 
 }
 
 // Concrete factory
 class USRegionFactory implements RegionFactory{
+    // invoice generators are stateless, one instance is reused
+    private static final Invoice invoice = new USInvoice();
 
     @Override
-    public PaymentGateway createPaymentGateway(String gatewayType) {
-        if(gatewayType.equalsIgnoreCase("Stripe")){
-            return new StripeGateway();
-        } else if(gatewayType.equalsIgnoreCase("Paypal")){
-            return new PayPalGateway();
-        }
-
-        throw new IllegalArgumentException("gateway type is not supported");
+    public GatewayProvider gatewayProvider(GatewayType gatewayType) {
+        return GatewayTable.lookup(Region.US, gatewayType);
     }
 
     @Override
     public Invoice createInvoice() {
-        return new USInvoice();
+        return invoice;
     }
     
 }
 
+// Max concurrent payments per gateway type, so a slow provider can't take every checkout thread.
+class GatewayLimits{
+    private static final int DEFAULT_LIMIT = 100;
+
+    private static final Map<GatewayType, Semaphore> limits = new EnumMap<>(GatewayType.class);
+
+    static{
+        for(GatewayType type: GatewayType.values()){
+            limits.put(type, new Semaphore(DEFAULT_LIMIT));
+        }
+    }
+
+    // configure during start up only, lookups are not synchronized
+    public static void setLimit(GatewayType type, int maxConcurrentPayments){
+        limits.put(type, new Semaphore(maxConcurrentPayments));
+    }
+
+    public static Semaphore of(GatewayType type){
+        return limits.get(type);
+    }
+}
+
 class CheckoutService{
-    PaymentGateway paymentGateway;
+    // one virtual thread per task, blocking on the gateway or the limit doesn't hold a platform thread
+    private static final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    GatewayProvider gatewayProvider;
+
+    Semaphore gatewayLimit;
 
     Invoice invoice;
 
     public CheckoutService(RegionFactory factory, String gatewayType){
-        this.paymentGateway = factory.createPaymentGateway(gatewayType);
+        this(factory, GatewayType.parse(gatewayType));
+    }
 
-        this.invoice = factory.createInvoice();
+    public CheckoutService(RegionFactory factory, GatewayType gatewayType){
+        this(factory.gatewayProvider(gatewayType), gatewayType, factory.createInvoice());
+    }
+
+    // lets tests plug in a fake gateway(e.g. new SharedGateway(new FakePaymentGateway(200)))
+    public CheckoutService(GatewayProvider gatewayProvider, GatewayType gatewayType, Invoice invoice){
+        this.gatewayProvider = gatewayProvider;
+
+        this.gatewayLimit = GatewayLimits.of(gatewayType);
+
+        this.invoice = invoice;
     }
 
     public void completeOrder(double amount){
-        this.paymentGateway.processPayment(amount);
+        pay(amount);
 
         this.invoice.generateInvoice();
     }
+
+    // Non-blocking variant: the invoice is prepared while the payment is in flight
+        // and issued only after the payment succeeded.
+    public CompletableFuture<Void> completeOrderAsync(double amount){
+        CompletableFuture<Void> payment = CompletableFuture.runAsync(() -> pay(amount), asyncExecutor);
+
+        CompletableFuture<PreparedInvoice> preparedInvoice = CompletableFuture.supplyAsync(() -> this.invoice.prepare(amount), asyncExecutor);
+
+        return payment.thenAcceptBoth(preparedInvoice, (paid, prepared) -> prepared.issue());
+    }
+
+    private void pay(double amount){
+        this.gatewayLimit.acquireUninterruptibly();
+
+        // shared gateways come back as the same instance, pooled ones are borrowed for this order only
+        PaymentGateway paymentGateway = this.gatewayProvider.acquire();
+
+        try{
+            paymentGateway.processPayment(amount);
+        } finally {
+            this.gatewayProvider.release(paymentGateway);
+
+            this.gatewayLimit.release();
+        }
+    }
 }
 
 public class AbstractFactory {
@@ -167,5 +416,31 @@ public class AbstractFactory {
         CheckoutService usaCheckout = new CheckoutService(new USRegionFactory(), "stripe");
 
         usaCheckout.completeOrder(200);
+
+        // paypal gateways are pooled: every order borrows one and returns it reset, so the next order reuses it
+        CheckoutService paypalCheckout = new CheckoutService(new USRegionFactory(), "paypal");
+
+        paypalCheckout.completeOrder(250);
+        paypalCheckout.completeOrder(350);
+
+        GatewayProvider paypalProvider = new USRegionFactory().gatewayProvider(GatewayType.PAYPAL);
+        PaymentGateway borrowed = paypalProvider.acquire();
+
+        paypalProvider.release(borrowed);
+        System.out.println(borrowed == paypalProvider.acquire());
+
+        // async checkout against a fake gateway taking 200ms, at most 2 payments at a time
+        GatewayLimits.setLimit(GatewayType.STRIPE, 2);
+
+        CheckoutService fakeCheckout = new CheckoutService(new SharedGateway(new FakePaymentGateway(200)), GatewayType.STRIPE, new USInvoice());
+        List<CompletableFuture<Void>> orders = new ArrayList<>();
+
+        for(int order = 1; order <= 4; order++){
+            orders.add(fakeCheckout.completeOrderAsync(order * 100));
+        }
+
+        for(CompletableFuture<Void> order: orders){
+            order.join();
+        }
     }
 }
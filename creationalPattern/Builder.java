@@ -25,48 +25,319 @@ Basic Structure of Builder Pattern:
     - finally, add build() method that creates immutable object for the main class using builder object.
 */
 
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
-class BurgerMeal {
-    // required parameters
-    private final String bunType;
-    private final String pattyType;
+// Fixed vocabularies of an order, each value is stored once(enum constant) instead of a String per order.
+interface Labeled{
+    String label();
 
-    //optional parameters
-    private final boolean hasCheese;
-    private final String side;
-    private final List<String> toppings; 
-    private final boolean hasDrink;
+    // case-insensitive lookup by label
+    static <E extends Labeled> E parse(E[] values, String label, String kind){
+        for(E value: values){
+            if(value.label().equalsIgnoreCase(label)){
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("unknown " + kind + ":" + label);
+    }
+
+    // same lookup on text[from, to) without creating a substring
+    static <E extends Labeled> E parse(E[] values, String text, int from, int to, String kind){
+        for(E value: values){
+            String label = value.label();
+
+            if(label.length() == to - from && text.regionMatches(true, from, label, 0, label.length())){
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("unknown " + kind + ":" + text.substring(from, to));
+    }
+}
+
+enum BunType implements Labeled{
+    WHEAT("wheat"), MULTI_GRAIN("multi-grain"), WHITE("white"), BRIOCHE("brioche");
+
+    static final BunType[] VALUES = values();
+
+    private final String label;
+
+    BunType(String label){
+        this.label = label;
+    }
+
+    @Override
+    public String label(){
+        return label;
+    }
+
+    public static BunType parse(String label){
+        return Labeled.parse(VALUES, label, "bun type");
+    }
+}
+
+enum PattyType implements Labeled{
+    VEG("veg"), NON_VEG("non-veg"), CHICKEN("chicken"), PANEER("paneer");
+
+    static final PattyType[] VALUES = values();
+
+    private final String label;
+
+    PattyType(String label){
+        this.label = label;
+    }
+
+    @Override
+    public String label(){
+        return label;
+    }
+
+    public static PattyType parse(String label){
+        return Labeled.parse(VALUES, label, "patty type");
+    }
+}
+
+enum Side implements Labeled{
+    FRIES("fries"), SALAD("salad"), WEDGES("wedges"), ONION_RINGS("onion-rings");
+
+    static final Side[] VALUES = values();
+
+    private final String label;
+
+    Side(String label){
+        this.label = label;
+    }
+
+    @Override
+    public String label(){
+        return label;
+    }
+
+    public static Side parse(String label){
+        return Labeled.parse(VALUES, label, "side");
+    }
+}
+
+// at most 16 toppings, they are stored as bits of the encoded meal
+enum Topping implements Labeled{
+    LETTUCE("lettuce"), TOMATO("tomato"), ONION("onion"), PICKLES("pickles"),
+    JALAPENO("jalapeno"), MUSHROOM("mushroom"), BACON("bacon"), EGG("egg");
+
+    static final Topping[] VALUES = values();
+
+    private final String label;
+
+    Topping(String label){
+        this.label = label;
+    }
+
+    @Override
+    public String label(){
+        return label;
+    }
+
+    public static Topping parse(String label){
+        return Labeled.parse(VALUES, label, "topping");
+    }
+}
+
+// Compact meal: the whole order is packed into a single int
+    // bits 0-3 bun, 4-7 patty, 8-11 side(0 = no side, else ordinal + 1), 12 cheese, 13 drink, 16-31 toppings bitset
+// so a live order costs one small object instead of the strings and the list it used to hold.
+class BurgerMeal implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int CHEESE_BIT = 1 << 12;
+    private static final int DRINK_BIT = 1 << 13;
+    private static final int TOPPINGS_SHIFT = 16;
+
+    private final int encoded;
+
+    // computed on first use, racy but idempotent(like String.hashCode)
+    private transient String text;
 
     private BurgerMeal(Builder builder){
-        this.bunType = builder.bunType;
-        this.pattyType = builder.pattyType;
-        this.hasCheese = builder.hasCheese;
-        this.side = builder.side;
-        this.toppings = builder.toppings;
-        this.hasDrink = builder.hasDrink;
+        this.encoded = builder.encode();
+    }
+
+    private BurgerMeal(int encoded){
+        this.encoded = encoded;
+    }
+
+    // rebuilds a meal from encoded(), e.g. when reading orders back from a compact store
+    public static BurgerMeal fromEncoded(int encoded){
+        return new BurgerMeal(encoded);
+    }
+
+    public int encoded(){
+        return encoded;
+    }
+
+    public BunType getBunType(){
+        return BunType.VALUES[encoded & 0xF];
+    }
+
+    public PattyType getPattyType(){
+        return PattyType.VALUES[encoded >>> 4 & 0xF];
+    }
+
+    // null when the meal has no side
+    public Side getSide(){
+        int side = encoded >>> 8 & 0xF;
+
+        return side == 0 ? null : Side.VALUES[side - 1];
+    }
+
+    public boolean hasCheese(){
+        return (encoded & CHEESE_BIT) != 0;
+    }
+
+    public boolean hasDrink(){
+        return (encoded & DRINK_BIT) != 0;
+    }
+
+    public boolean hasTopping(Topping topping){
+        return (encoded >>> TOPPINGS_SHIFT & 1 << topping.ordinal()) != 0;
+    }
+
+    public Set<Topping> getToppings(){
+        Set<Topping> toppings = EnumSet.noneOf(Topping.class);
+
+        for(Topping topping: Topping.VALUES){
+            if(hasTopping(topping)){
+                toppings.add(topping);
+            }
+        }
+
+        return toppings;
     }
 
     @Override
     public String toString(){
-        return "bun:"+bunType+" patty:"+pattyType+" side:"+side+" drink:"+hasDrink+" toppings:"+ toppings+" cheese:"+hasCheese;
+        if(text == null){
+            StringJoiner toppings = new StringJoiner(", ", "[", "]");
+
+            for(Topping topping: getToppings()){
+                toppings.add(topping.label());
+            }
+
+            Side side = getSide();
+
+            text = "bun:"+getBunType().label()+" patty:"+getPattyType().label()+" side:"+(side == null ? null : side.label())
+                +" drink:"+hasDrink()+" toppings:"+toppings+" cheese:"+hasCheese();
+        }
+
+        return text;
     }
 
     public static class Builder{
-        private String bunType;
-        private String pattyType;
+        // one recyclable builder per thread for feed parsing
+        private static final ThreadLocal<Builder> pooled = ThreadLocal.withInitial(() -> new Builder(BunType.WHEAT, PattyType.VEG));
+
+        private BunType bunType;
+        private PattyType pattyType;
 
         private boolean hasCheese;
-        private String side;
-        private List<String> toppings; 
+        private Side side;
+        // toppings are copied into a bitset, so the built meal never shares the caller's list
+        private int toppings; 
         private boolean hasDrink;
 
         public Builder(String bunType, String pattyType){
+            this(BunType.parse(bunType), PattyType.parse(pattyType));
+        }
+
+        public Builder(BunType bunType, PattyType pattyType){
             this.bunType = bunType;
 
             this.pattyType = pattyType;
         }
 
+        // reset builder of the calling thread, valid until the thread's next pooled() call
+        public static Builder pooled(BunType bunType, PattyType pattyType){
+            return pooled.get().reset(bunType, pattyType);
+        }
+
+        // builder of the calling thread as left by its last use, meant to be followed by parse(line)
+        public static Builder pooled(){
+            return pooled.get();
+        }
+
+        // clears every optional parameter so the builder can be reused for the next order
+        public Builder reset(BunType bunType, PattyType pattyType){
+            this.bunType = bunType;
+            this.pattyType = pattyType;
+            this.hasCheese = false;
+            this.side = null;
+            this.toppings = 0;
+            this.hasDrink = false;
+
+            return this;
+        }
+
+        // Parses one order line "bun,patty,side,cheese,drink,topping|topping" into this builder
+            // (side and toppings can be empty, cheese/drink are true/false), no substrings are created.
+        public Builder parse(String line){
+            int end = line.indexOf(',');
+
+            if(end < 0){
+                throw new IllegalArgumentException("incomplete order:" + line);
+            }
+
+            BunType bun = Labeled.parse(BunType.VALUES, line, 0, end, "bun type");
+
+            int start = end + 1;
+            end = fieldEnd(line, start);
+            reset(bun, Labeled.parse(PattyType.VALUES, line, start, end, "patty type"));
+
+            start = end + 1;
+            end = fieldEnd(line, start);
+            this.side = start == end ? null : Labeled.parse(Side.VALUES, line, start, end, "side");
+
+            start = end + 1;
+            end = fieldEnd(line, start);
+            this.hasCheese = parseFlag(line, start, end, "cheese");
+
+            start = end + 1;
+            end = fieldEnd(line, start);
+            this.hasDrink = parseFlag(line, start, end, "drink");
+
+            for(start = end + 1; start < line.length(); start = end + 1){
+                end = line.indexOf('|', start);
+                end = end < 0 ? line.length() : end;
+
+                this.toppings |= 1 << Labeled.parse(Topping.VALUES, line, start, end, "topping").ordinal();
+            }
+
+            return this;
+        }
+
+        // only true or false, anything else is rejected like an unknown bun or topping
+        private static boolean parseFlag(String line, int start, int end, String kind){
+            if(end - start == 4 && line.regionMatches(true, start, "true", 0, 4)){
+                return true;
+            }
+
+            if(end - start == 5 && line.regionMatches(true, start, "false", 0, 5)){
+                return false;
+            }
+
+            throw new IllegalArgumentException("invalid " + kind + " flag:" + line.substring(start, end));
+        }
+
+        private static int fieldEnd(String line, int start){
+            if(start > line.length()){
+                throw new IllegalArgumentException("incomplete order:" + line);
+            }
+
+            int end = line.indexOf(',', start);
+
+            return end < 0 ? line.length() : end;
+        }
+
         public Builder withCheese(boolean value){
             this.hasCheese = value;
 
@@ -74,6 +345,10 @@ class BurgerMeal {
         }
 
         public Builder withSide(String value){
+            return withSide(value == null ? null : Side.parse(value));
+        }
+
+        public Builder withSide(Side value){
             this.side = value;
 
             return this;
@@ -86,17 +361,123 @@ class BurgerMeal {
         }
 
         public Builder withToppings(List<String> value){
-            this.toppings = value;
+            this.toppings = 0;
+
+            for(String topping: value){
+                this.toppings |= 1 << Topping.parse(topping).ordinal();
+            }
+
+            return this;
+        }
+
+        public Builder withToppings(Topping... value){
+            this.toppings = 0;
+
+            for(Topping topping: value){
+                this.toppings |= 1 << topping.ordinal();
+            }
 
             return this;
         }
 
+        // encoded form of the meal(see BurgerMeal), without creating the meal object
+        public int encode(){
+            return bunType.ordinal()
+                | pattyType.ordinal() << 4
+                | (side == null ? 0 : side.ordinal() + 1) << 8
+                | (hasCheese ? CHEESE_BIT : 0)
+                | (hasDrink ? DRINK_BIT : 0)
+                | toppings << TOPPINGS_SHIFT;
+        }
+
         public BurgerMeal build(){
             return new BurgerMeal(this);
         }
+
+        // writes the meal into a caller provided buffer instead of allocating it
+        public void buildInto(int[] out, int index){
+            out[index] = encode();
+        }
+
+        public void buildInto(BurgerMealBatch batch){
+            batch.add(encode());
+        }
     };
 };
 
+// Versioned binary format of a meal(big endian, 7 bytes):
+    // short magic 'BM', byte version, int encoded meal(layout described on BurgerMeal)
+// reads use absolute positions on the caller's buffer, nothing is copied and the buffer position is untouched.
+class BurgerMealCodec{
+    static final short MAGIC = 0x424D;
+    static final byte VERSION = 1;
+    static final int SIZE = 7;
+
+    public static void encode(BurgerMeal meal, ByteBuffer out){
+        out.putShort(MAGIC).put(VERSION).putInt(meal.encoded());
+    }
+
+    // encoded meal of the record starting at offset
+    public static int readEncoded(ByteBuffer in, int offset){
+        if(in.getShort(offset) != MAGIC){
+            throw new IllegalArgumentException("not a burger meal record at:" + offset);
+        }
+
+        if(in.get(offset + 2) != VERSION){
+            throw new IllegalArgumentException("unsupported burger meal version:" + in.get(offset + 2));
+        }
+
+        return in.getInt(offset + 3);
+    }
+
+    // relative read, advances the buffer past the record only once it was read, a rejected record consumes nothing
+    public static BurgerMeal decode(ByteBuffer in){
+        int offset = in.position();
+        BurgerMeal meal = BurgerMeal.fromEncoded(readEncoded(in, offset));
+
+        in.position(offset + SIZE);
+
+        return meal;
+    }
+}
+
+// Columnar batch of meals: one int per meal, no object per order.
+class BurgerMealBatch{
+    private int[] meals;
+
+    private int size;
+
+    public BurgerMealBatch(int initialCapacity){
+        this.meals = new int[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(int encodedMeal){
+        if(size == meals.length){
+            meals = Arrays.copyOf(meals, size * 2);
+        }
+
+        meals[size++] = encodedMeal;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int encoded(int index){
+        return meals[index];
+    }
+
+    // object view of a single meal, only when one is needed
+    public BurgerMeal meal(int index){
+        return BurgerMeal.fromEncoded(meals[index]);
+    }
+
+    // keeps the array for the next batch
+    public void clear(){
+        size = 0;
+    }
+}
+
 public class Builder {
     public static void main(String[] args) {
         // Note: dont use same prefix as main class like BurgerBuilder
@@ -109,9 +490,105 @@ public class Builder {
                 .withCheese(true)
                 .withSide("fries")
                 .withDrink(true)
+                .withToppings(List.of("lettuce", "onion"))
                 .build();
 
         System.out.println(meal2.toString());
+
+        // order feed: one recycled builder per thread and a columnar batch instead of a builder + meal per line
+        BurgerMealBatch batch = new BurgerMealBatch(1024);
+
+        for(String line: List.of("wheat,veg,,false,true,lettuce|tomato", "brioche,chicken,wedges,true,false,")){
+            BurgerMeal.Builder.pooled().parse(line).buildInto(batch);
+        }
+
+        for(int i = 0; i < batch.size(); i++){
+            System.out.println(batch.meal(i));
+        }
+    }
+}
+
+
+
+// Round trip check and throughput of the binary codec against toString() and Java serialization:
+    // java BurgerMealCodecBenchmark [meals]
+class BurgerMealCodecBenchmark{
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        BurgerMeal[] meals = new BurgerMeal[count];
+
+        for(int i = 0; i < count; i++){
+            meals[i] = BurgerMeal.Builder.pooled(BunType.VALUES[i % BunType.VALUES.length], PattyType.VALUES[i % PattyType.VALUES.length])
+                .withSide(i % 3 == 0 ? null : Side.VALUES[i % Side.VALUES.length])
+                .withCheese(i % 2 == 0)
+                .withDrink(i % 5 == 0)
+                .withToppings(Topping.VALUES[i % Topping.VALUES.length], Topping.VALUES[(i / 7) % Topping.VALUES.length])
+                .build();
+        }
+
+        // round trip
+        ByteBuffer buffer = ByteBuffer.allocateDirect(count * BurgerMealCodec.SIZE);
+
+        long start = System.nanoTime();
+
+        for(BurgerMeal meal: meals){
+            BurgerMealCodec.encode(meal, buffer);
+        }
+
+        long encodeNanos = System.nanoTime() - start;
+
+        buffer.flip();
+        BurgerMeal[] decoded = new BurgerMeal[count];
+        start = System.nanoTime();
+
+        for(int i = 0; i < count; i++){
+            decoded[i] = BurgerMealCodec.decode(buffer);
+        }
+
+        long decodeNanos = System.nanoTime() - start;
+
+        for(int i = 0; i < count; i++){
+            if(decoded[i].encoded() != meals[i].encoded() || !decoded[i].toString().equals(meals[i].toString())){
+                throw new IllegalStateException("round trip mismatch at:" + i);
+            }
+        }
+
+        // toString
+        start = System.nanoTime();
+        long characters = 0;
+
+        for(BurgerMeal meal: meals){
+            characters += BurgerMeal.fromEncoded(meal.encoded()).toString().length();
+        }
+
+        long toStringNanos = System.nanoTime() - start;
+
+        // Java serialization
+        start = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)){
+            for(BurgerMeal meal: meals){
+                out.writeObject(meal);
+            }
+        }
+
+        long serializeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))){
+            for(int i = 0; i < count; i++){
+                in.readObject();
+            }
+        }
+
+        long deserializeNanos = System.nanoTime() - start;
+
+        System.out.println("round trip ok for " + count + " meals");
+        System.out.println("binary   encode(ms):" + encodeNanos / 1_000_000 + " decode(ms):" + decodeNanos / 1_000_000 + " bytes:" + count * BurgerMealCodec.SIZE);
+        System.out.println("toString (ms):" + toStringNanos / 1_000_000 + " chars:" + characters);
+        System.out.println("java serialization write(ms):" + serializeNanos / 1_000_000 + " read(ms):" + deserializeNanos / 1_000_000 + " bytes:" + bytes.size());
     }
 }
 
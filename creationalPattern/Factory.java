@@ -17,8 +17,20 @@ Cons:
     - more code overhead for multiple factories
 */
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.*;
+
 interface Logistics{
     void send();
+
+    // bulk hand-off of many packages, implementations can override with a real batch call
+    default void sendBulk(List<String> packageIds){
+        for(int i = 0; i < packageIds.size(); i++){
+            send();
+        }
+    }
 }
 
 class Road implements Logistics{
@@ -42,21 +54,214 @@ class Train implements Logistics{
     }
 }
 
+// Plug-in point for new modes:
+    // a public implementation listed in META-INF/services/LogisticsProvider is picked up by ServiceLoader,
+    // so new modes are added without touching LogisticsFactory.
+interface LogisticsProvider{
+    String mode();
+
+    // called once per mode, Logistics implementations are expected to be stateless
+    Logistics create();
+}
+
+// Problem: if-chain of equalsIgnoreCase + new object on every sendPackage call.
+// class LogisticsFactory {
+//     public static Logistics getLogistics(String mode){
+//         if(mode.equalsIgnoreCase("Air")){
+//             return new Air();
+//         } else if(mode.equalsIgnoreCase("Train")){
+//             return new Train();
+//         }
+
+//         return new Road();
+//     }
+// };
+
+// Registration based factory:
+    // every mode is registered once with a cached singleton,
+    // lookup is a case-insensitive perfect hash(no collisions, so one slot probe and one key compare).
 class LogisticsFactory {
+    static final String DEFAULT_MODE = "road";
+
+    private static final Logistics DEFAULT_LOGISTICS = new Road();
+
+    private static final Map<String, Logistics> registered = new LinkedHashMap<>();
+
+    // rebuilt on registration(rare), read without locking on every lookup
+    private static volatile ModeTable table;
+
+    static{
+        register(DEFAULT_MODE, DEFAULT_LOGISTICS);
+        register("Air", new Air());
+        register("Train", new Train());
+
+        for(LogisticsProvider provider: ServiceLoader.load(LogisticsProvider.class)){
+            register(provider.mode(), provider.create());
+        }
+    }
+
+    public static synchronized void register(String mode, Logistics logistics){
+        registered.put(mode.toLowerCase(Locale.ROOT), logistics);
+
+        table = ModeTable.build(registered);
+    }
+
     public static Logistics getLogistics(String mode){
-        // Follows OCP, when new mode is added,
-            // we can add logic to create new object like train
-        if(mode.equalsIgnoreCase("Air")){
-            return new Air();
-        } else if(mode.equalsIgnoreCase("Train")){
-            return new Train();
+        Logistics logistics = table.get(mode);
+
+        // unknown modes still fall back to road as before
+        return logistics != null ? logistics : DEFAULT_LOGISTICS;
+    }
+
+    // normalized(lower case) mode a shipment is sent with, unknown modes resolve to the default mode
+    public static String resolveMode(String mode){
+        return table.get(mode) != null ? mode.toLowerCase(Locale.ROOT) : DEFAULT_MODE;
+    }
+
+    // Open addressing table where a seed is searched at build time so that no two modes share a slot,
+    // when no seed is found within a few table sizes a regular map is used instead.
+    private static final class ModeTable{
+        private static final int SEEDS_PER_SIZE = 1024;
+
+        private static final int MAX_GROWTH = 4;
+
+        private final String[] keys;
+
+        private final Logistics[] values;
+
+        private final int seed;
+
+        private final int mask;
+
+        private final Map<String, Logistics> fallback;
+
+        private ModeTable(int size, int seed){
+            this.keys = new String[size];
+            this.values = new Logistics[size];
+            this.seed = seed;
+            this.mask = size - 1;
+            this.fallback = null;
+        }
+
+        private ModeTable(Map<String, Logistics> modes){
+            this.keys = null;
+            this.values = null;
+            this.seed = 0;
+            this.mask = 0;
+            this.fallback = new HashMap<>(modes);
+        }
+
+        static ModeTable build(Map<String, Logistics> modes){
+            int size = Integer.highestOneBit(Math.max(2, modes.size() * 2 - 1)) << 1;
+
+            for(int growth = 0; growth < MAX_GROWTH; growth++, size <<= 1){
+                for(int seed = 0; seed < SEEDS_PER_SIZE; seed++){
+                    ModeTable candidate = new ModeTable(size, seed);
+
+                    if(candidate.fill(modes)){
+                        return candidate;
+                    }
+                }
+            }
+
+            return new ModeTable(modes);
+        }
+
+        private boolean fill(Map<String, Logistics> modes){
+            for(Map.Entry<String, Logistics> entry: modes.entrySet()){
+                int slot = hash(entry.getKey(), seed) & mask;
+
+                if(keys[slot] != null){
+                    return false;
+                }
+
+                keys[slot] = entry.getKey();
+                values[slot] = entry.getValue();
+            }
+
+            return true;
+        }
+
+        Logistics get(String mode){
+            if(fallback != null){
+                return fallback.get(mode.toLowerCase(Locale.ROOT));
+            }
+
+            int slot = hash(mode, seed) & mask;
+            String key = keys[slot];
+
+            return key != null && key.equalsIgnoreCase(mode) ? values[slot] : null;
         }
 
-        return new Road();
+        // case-insensitive hash computed on the fly, no lower-cased copy of the input
+        // the seed picks the multiplier of every step, so inputs colliding for one seed are separated by another
+        private static int hash(String mode, int seed){
+            int multiplier = 0x01000193 + (seed << 1);
+            int hash = seed * 0x9E3779B9;
+
+            for(int i = 0; i < mode.length(); i++){
+                hash = (hash ^ Character.toLowerCase(mode.charAt(i))) * multiplier;
+                hash ^= hash >>> 15;
+            }
+
+            hash ^= hash >>> 16;
+            hash *= 0x85EBCA6B;
+
+            return hash ^ (hash >>> 13);
+        }
     }
 };
 
+class Shipment{
+    final String packageId;
+
+    final String mode;
+
+    public Shipment(String packageId, String mode){
+        this.packageId = packageId;
+
+        this.mode = mode;
+    }
+}
+
+// throughput counters of one logistics mode, used to size the dispatch pool
+class ModeThroughput{
+    final LongAdder packages = new LongAdder();
+
+    final LongAdder batches = new LongAdder();
+
+    final LongAdder busyNanos = new LongAdder();
+
+    // packages per second of time spent inside send
+    public double packagesPerSecond(){
+        long busy = busyNanos.sum();
+
+        return busy == 0 ? 0 : packages.sum() * 1e9 / busy;
+    }
+
+    @Override
+    public String toString(){
+        return "packages:"+packages.sum()+" batches:"+batches.sum()+" packages/s:"+(long)packagesPerSecond();
+    }
+}
+
 class LogisticsService {
+    // large groups are split so that one busy mode is spread over several workers
+    private static final int MAX_BATCH_SIZE = 10_000;
+
+    // work-stealing pool, idle workers steal batches of other modes
+    private final ForkJoinPool pool;
+
+    private final ConcurrentHashMap<String, ModeThroughput> throughput = new ConcurrentHashMap<>();
+
+    public LogisticsService(){
+        this(ForkJoinPool.commonPool());
+    }
+
+    public LogisticsService(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
     public void sendPackage(String mode){
         // Follows SRP(focus on getting logistics based on mode and send)
 
@@ -67,6 +272,46 @@ class LogisticsService {
 
         logistics.send();
     }
+
+    // Batch API: groups shipments by normalized mode, hands every group to sendBulk of its
+        // Logistics in parallel and waits for all of them.
+    public void sendPackages(Stream<Shipment> shipments){
+        Map<String, List<String>> groups = shipments.collect(Collectors.groupingBy(
+            shipment -> LogisticsFactory.resolveMode(shipment.mode),
+            Collectors.mapping(shipment -> shipment.packageId, Collectors.toList())));
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        groups.forEach((mode, packageIds) -> {
+            Logistics logistics = LogisticsFactory.getLogistics(mode);
+
+            for(int from = 0; from < packageIds.size(); from += MAX_BATCH_SIZE){
+                List<String> batch = packageIds.subList(from, Math.min(from + MAX_BATCH_SIZE, packageIds.size()));
+
+                tasks.add(pool.submit(() -> sendBatch(mode, logistics, batch)));
+            }
+        });
+
+        for(ForkJoinTask<?> task: tasks){
+            task.join();
+        }
+    }
+
+    private void sendBatch(String mode, Logistics logistics, List<String> packageIds){
+        ModeThroughput counters = throughput.computeIfAbsent(mode, key -> new ModeThroughput());
+        long start = System.nanoTime();
+
+        logistics.sendBulk(packageIds);
+
+        counters.busyNanos.add(System.nanoTime() - start);
+        counters.packages.add(packageIds.size());
+        counters.batches.increment();
+    }
+
+    // per mode counters keyed by the normalized mode
+    public Map<String, ModeThroughput> throughput(){
+        return Collections.unmodifiableMap(throughput);
+    }
 };
 
 public class Factory {
@@ -74,5 +319,17 @@ public class Factory {
         LogisticsService logisticsService = new LogisticsService();
 
         logisticsService.sendPackage("Train");
+        logisticsService.sendPackage("AIR");
+
+        // same cached instance for every lookup of a mode
+        System.out.println(LogisticsFactory.getLogistics("train") == LogisticsFactory.getLogistics("TRAIN"));
+
+        logisticsService.sendPackages(Stream.of(
+            new Shipment("PKG-1", "Air"),
+            new Shipment("PKG-2", "Road"),
+            new Shipment("PKG-3", "air"),
+            new Shipment("PKG-4", "Train")));
+
+        System.out.println(logisticsService.throughput());
     }
 }
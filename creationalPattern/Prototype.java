@@ -18,7 +18,12 @@ Cons:
     - Trouble with circular references during cloning
  */
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 
 interface EmailTemplate extends Cloneable{
@@ -27,6 +32,17 @@ interface EmailTemplate extends Cloneable{
     void send(String email);
 
     void setContent(String content);
+
+    String getSubject();
+
+    String getContent();
+
+    // bulk path: renders the registered template for every recipient and hands them to the sink in chunks
+    static CampaignReport sendBatch(String templateKey, Iterable<Recipient> recipients){
+        try(CampaignSender sender = new CampaignSender(new ConsoleEmailSink(), Runtime.getRuntime().availableProcessors(), 1000, 64)){
+            return sender.sendBatch(templateKey, recipients);
+        }
+    }
 }
 
 class WelcomeEmail implements EmailTemplate{
@@ -60,6 +76,16 @@ class WelcomeEmail implements EmailTemplate{
     public void setContent(String content) {
         this.content = content;
     }
+
+    @Override
+    public String getSubject() {
+        return subject;
+    }
+
+    @Override
+    public String getContent() {
+        return content;
+    }
 }
 
 class DiscountEmail implements EmailTemplate{
@@ -93,20 +119,415 @@ class DiscountEmail implements EmailTemplate{
     public void setContent(String content) {
         this.content = content;
     }
+
+    @Override
+    public String getSubject() {
+        return subject;
+    }
+
+    @Override
+    public String getContent() {
+        return content;
+    }
+}
+
+
+
+// template loaded at runtime(e.g. from a file) instead of a hard-coded class
+class CustomEmail implements EmailTemplate{
+    private String content;
+
+    private String subject;
+
+    public CustomEmail(String subject, String content){
+        this.subject = subject;
+
+        this.content = content;
+    }
+
+    @Override
+    public CustomEmail clone(){
+        try{
+            return (CustomEmail)super.clone();
+        }catch(Exception ex){
+            System.out.println("Exception while cloning" + ex.getMessage());
+
+            throw new RuntimeException("Cloning exception");
+        }
+    }
+
+    @Override
+    public void send(String email) {
+        System.out.println("Sending email to:"+email+" with subject:"+subject+" content:"+content);
+    }
+
+    @Override
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    @Override
+    public String getSubject() {
+        return subject;
+    }
+
+    @Override
+    public String getContent() {
+        return content;
+    }
+}
+
+// Precompiled template:
+    // "Hi {{name}}, use {{code}}" is split once into static segments ["Hi ", ", use ", ""] and slots [name, code],
+    // rendering then only appends segments and values into a reused per-thread buffer(no clone, no concatenation).
+class CompiledEmail{
+    private static final ThreadLocal<StringBuilder> subjectBuffer = ThreadLocal.withInitial(() -> new StringBuilder(128));
+    private static final ThreadLocal<StringBuilder> bodyBuffer = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    // slot names shared by subject and body, values are passed in this order
+    private final List<String> slotNames = new ArrayList<>();
+
+    private final String[] subjectSegments;
+    private final int[] subjectSlots;
+
+    private final String[] bodySegments;
+    private final int[] bodySlots;
+
+    private CompiledEmail(String subject, String content){
+        List<String> segments = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+
+        split(subject, segments, slots);
+        this.subjectSegments = segments.toArray(new String[0]);
+        this.subjectSlots = slots.stream().mapToInt(Integer::intValue).toArray();
+
+        segments.clear();
+        slots.clear();
+
+        split(content, segments, slots);
+        this.bodySegments = segments.toArray(new String[0]);
+        this.bodySlots = slots.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public static CompiledEmail compile(EmailTemplate template){
+        return new CompiledEmail(template.getSubject(), template.getContent());
+    }
+
+    private void split(String text, List<String> segments, List<Integer> slots){
+        int from = 0;
+        int open;
+
+        while((open = text.indexOf("{{", from)) >= 0){
+            int close = text.indexOf("}}", open + 2);
+
+            if(close < 0){
+                break;
+            }
+
+            String name = text.substring(open + 2, close).strip();
+            int slot = slotNames.indexOf(name);
+
+            if(slot < 0){
+                slot = slotNames.size();
+                slotNames.add(name);
+            }
+
+            segments.add(text.substring(from, open));
+            slots.add(slot);
+
+            from = close + 2;
+        }
+
+        // always one more segment than slots
+        segments.add(text.substring(from));
+    }
+
+    public int slotCount(){
+        return slotNames.size();
+    }
+
+    // index of the placeholder in the values array, -1 if the template doesn't use it
+    public int slot(String name){
+        return slotNames.indexOf(name);
+    }
+
+    // returned buffer belongs to the calling thread and is overwritten by its next render
+    public CharSequence renderSubject(String[] values){
+        return render(subjectBuffer.get(), subjectSegments, subjectSlots, values);
+    }
+
+    // returned buffer belongs to the calling thread and is overwritten by its next render
+    public CharSequence renderBody(String[] values){
+        return render(bodyBuffer.get(), bodySegments, bodySlots, values);
+    }
+
+    private static StringBuilder render(StringBuilder out, String[] segments, int[] slots, String[] values){
+        out.setLength(0);
+
+        for(int i = 0; i < slots.length; i++){
+            String value = values[slots[i]];
+
+            out.append(segments[i]).append(value == null ? "" : value);
+        }
+
+        return out.append(segments[slots.length]);
+    }
+}
+
+// Bulk campaign sending
+
+// recipient with placeholder values in the template's slot order(see CompiledEmail.slot(name))
+class Recipient{
+    final String email;
+
+    final String[] values;
+
+    public Recipient(String email, String... values){
+        this.email = email;
+
+        this.values = values;
+    }
+}
+
+// where rendered messages are handed off(SMTP client, queue,...), subject and body are only valid during the call
+interface EmailSink{
+    void deliver(String email, CharSequence subject, CharSequence body);
+}
+
+class ConsoleEmailSink implements EmailSink{
+    @Override
+    public void deliver(String email, CharSequence subject, CharSequence body) {
+        System.out.println("Sending email to:"+email+" with subject:"+subject+" content:"+body);
+    }
 }
 
+// local stub sink for benchmarking: only counts messages and bytes
+class CountingEmailSink implements EmailSink{
+    final LongAdder messages = new LongAdder();
+
+    final LongAdder characters = new LongAdder();
+
+    @Override
+    public void deliver(String email, CharSequence subject, CharSequence body) {
+        messages.increment();
+
+        characters.add(email.length() + subject.length() + body.length());
+    }
+}
+
+class CampaignReport{
+    public final long sent;
+    public final long failed;
+    public final long chunks;
+    public final long elapsedNanos;
+    public final long p50ChunkNanos;
+    public final long p99ChunkNanos;
+    public final long maxChunkNanos;
+
+    public CampaignReport(long sent, long failed, long chunks, long elapsedNanos, long p50ChunkNanos, long p99ChunkNanos, long maxChunkNanos){
+        this.sent = sent;
+        this.failed = failed;
+        this.chunks = chunks;
+        this.elapsedNanos = elapsedNanos;
+        this.p50ChunkNanos = p50ChunkNanos;
+        this.p99ChunkNanos = p99ChunkNanos;
+        this.maxChunkNanos = maxChunkNanos;
+    }
+
+    public double messagesPerSecond(){
+        return elapsedNanos == 0 ? 0 : sent * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString(){
+        return "sent:"+sent+" failed:"+failed+" chunks:"+chunks+" elapsed(ms):"+elapsedNanos / 1_000_000
+            +" msgs/s:"+(long)messagesPerSecond()+" chunk p50(us):"+p50ChunkNanos / 1000
+            +" chunk p99(us):"+p99ChunkNanos / 1000+" chunk max(us):"+maxChunkNanos / 1000;
+    }
+}
+
+// Renders and hands off recipients in chunks on a fixed worker pool.
+    // backpressure: the caller thread blocks once maxChunksInFlight chunks are queued or running,
+    // so a 10M recipient iterable is never materialized in memory.
+class CampaignSender implements AutoCloseable{
+    private final EmailSink sink;
+
+    private final ExecutorService workers;
+
+    private final int chunkSize;
+
+    private final int maxChunksInFlight;
+
+    public CampaignSender(EmailSink sink, int workerCount, int chunkSize, int maxChunksInFlight){
+        this.sink = sink;
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = maxChunksInFlight;
+    }
 
+    public CampaignReport sendBatch(String templateKey, Iterable<Recipient> recipients){
+        CompiledEmail compiled = EmailTemplateRegistry.getCompiled(templateKey);
+        Semaphore inFlight = new Semaphore(maxChunksInFlight);
+
+        LongAdder sent = new LongAdder();
+        LongAdder failed = new LongAdder();
+        AtomicLongArray chunkLatency = new AtomicLongArray(64);
+        AtomicLong maxChunkNanos = new AtomicLong();
+        long chunks = 0;
+
+        long start = System.nanoTime();
+        Iterator<Recipient> iterator = recipients.iterator();
+
+        while(iterator.hasNext()){
+            Recipient[] chunk = new Recipient[chunkSize];
+            int size = 0;
+
+            while(size < chunkSize && iterator.hasNext()){
+                chunk[size++] = iterator.next();
+            }
+
+            inFlight.acquireUninterruptibly();
+            chunks++;
+
+            int chunkLength = size;
+
+            workers.execute(() -> {
+                long chunkStart = System.nanoTime();
+
+                try{
+                    for(int i = 0; i < chunkLength; i++){
+                        try{
+                            sink.deliver(chunk[i].email, compiled.renderSubject(chunk[i].values), compiled.renderBody(chunk[i].values));
+
+                            sent.increment();
+                        } catch(RuntimeException ex){
+                            failed.increment();
+                        }
+                    }
+                } finally {
+                    long elapsed = System.nanoTime() - chunkStart;
+
+                    // log2 buckets are enough for chunk latency percentiles
+                    chunkLatency.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(elapsed, 1)));
+                    maxChunkNanos.accumulateAndGet(elapsed, Math::max);
+
+                    inFlight.release();
+                }
+            });
+        }
+
+        // all permits back means every submitted chunk has finished
+        inFlight.acquireUninterruptibly(maxChunksInFlight);
+        inFlight.release(maxChunksInFlight);
+
+        long max = maxChunkNanos.get();
+
+        return new CampaignReport(sent.sum(), failed.sum(), chunks, System.nanoTime() - start,
+            Math.min(percentile(chunkLatency, chunks, 0.50), max), Math.min(percentile(chunkLatency, chunks, 0.99), max), max);
+    }
+
+    // upper bound of the log2 bucket holding the percentile
+    private static long percentile(AtomicLongArray buckets, long total, double percentile){
+        long rank = Math.max(1, (long)Math.ceil(percentile * total));
+        long seen = 0;
+
+        for(int i = 0; i < buckets.length(); i++){
+            seen += buckets.get(i);
+
+            if(seen >= rank){
+                return (1L << (i + 1)) - 1;
+            }
+        }
+
+        return 0;
+    }
+
+    @Override
+    public void close(){
+        workers.shutdown();
+    }
+}
 
+// Copy-on-write registry:
+    // readers get the current immutable snapshot with a single volatile read(no locks),
+    // writers build a new map and swap it in atomically, so readers never see a half-applied update.
 class EmailTemplateRegistry{
-    private static final Map<String, EmailTemplate> templates = new HashMap<>();
+    // prototypes and their compiled forms are swapped together so they never disagree
+    private static class Snapshot{
+        final Map<String, EmailTemplate> templates;
+
+        final Map<String, CompiledEmail> compiled;
+
+        Snapshot(Map<String, EmailTemplate> templates){
+            Map<String, CompiledEmail> compiled = new HashMap<>();
 
-    static{
-        templates.put("welcome", new WelcomeEmail());
-        templates.put("discount", new DiscountEmail());
+            templates.forEach((key, template) -> compiled.put(key, CompiledEmail.compile(template)));
+
+            this.templates = Map.copyOf(templates);
+            this.compiled = Map.copyOf(compiled);
+        }
     }
 
+    private static final AtomicReference<Snapshot> snapshot = new AtomicReference<>(
+        new Snapshot(Map.of("welcome", new WelcomeEmail(), "discount", new DiscountEmail())));
+
     public static EmailTemplate getTemplate(String key){
-        return templates.get(key).clone();
+        EmailTemplate template = snapshot.get().templates.get(key);
+
+        if(template == null){
+            throw new IllegalArgumentException("template not found:" + key);
+        }
+
+        return template.clone();
+    }
+
+    // allocation-free alternative to getTemplate(key) + setContent(..) for bulk sends
+    public static CompiledEmail getCompiled(String key){
+        CompiledEmail compiled = snapshot.get().compiled.get(key);
+
+        if(compiled == null){
+            throw new IllegalArgumentException("template not found:" + key);
+        }
+
+        return compiled;
+    }
+
+    // adds or replaces a single template
+    public static void register(String key, EmailTemplate template){
+        registerAll(Map.of(key, template));
+    }
+
+    // adds or replaces all the given templates as one unit
+    public static void registerAll(Map<String, EmailTemplate> updates){
+        snapshot.updateAndGet(current -> {
+            Map<String, EmailTemplate> next = new HashMap<>(current.templates);
+            next.putAll(updates);
+
+            return new Snapshot(next);
+        });
+    }
+
+    // Loads every "<key>.email" file in the directory(first line is the subject, rest is the content)
+        // and swaps them in together, if any file fails to load the registry is left unchanged.
+    public static int loadFromDirectory(Path directory) throws IOException{
+        Map<String, EmailTemplate> loaded = new HashMap<>();
+
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.email")){
+            for(Path file: files){
+                String fileName = file.getFileName().toString();
+                String text = Files.readString(file, StandardCharsets.UTF_8);
+                int subjectEnd = text.indexOf('\n');
+
+                String subject = subjectEnd < 0 ? text : text.substring(0, subjectEnd).strip();
+                String content = subjectEnd < 0 ? "" : text.substring(subjectEnd + 1);
+
+                loaded.put(fileName.substring(0, fileName.length() - ".email".length()), new CustomEmail(subject, content));
+            }
+        }
+
+        registerAll(loaded);
+
+        return loaded.size();
     }
 }
 
@@ -121,5 +542,65 @@ public class Prototype {
         email1.send("user2@abc.com");
 
         System.out.println(email2);
+
+        // templates can be added or replaced while other threads keep calling getTemplate
+        EmailTemplateRegistry.register("renewal", new CustomEmail("Renew your TUF Plus plan", "Your plan expires soon"));
+        EmailTemplateRegistry.getTemplate("renewal").send("user3@abc.com");
+
+        // personalized sends without cloning: values are filled in slot order into a reused buffer
+        EmailTemplateRegistry.register("coupon", new CustomEmail("{{name}}, your coupon is here", "Hi {{name}}, use {{code}} for 20% off"));
+
+        CompiledEmail coupon = EmailTemplateRegistry.getCompiled("coupon");
+        String[] values = new String[coupon.slotCount()];
+
+        for(String user: List.of("user4", "user5")){
+            values[coupon.slot("name")] = user;
+            values[coupon.slot("code")] = "TUF20";
+
+            System.out.println("subject:" + coupon.renderSubject(values) + " content:" + coupon.renderBody(values));
+        }
+
+        // chunked bulk send instead of calling send(email) once per address
+        List<Recipient> recipients = List.of(new Recipient("user6@abc.com", "user6", "TUF20"), new Recipient("user7@abc.com", "user7", "TUF30"));
+
+        System.out.println(EmailTemplate.sendBatch("coupon", recipients));
+    }
+}
+
+// End to end campaign benchmark against the local stub sink:
+    // java CampaignBenchmark [recipients] [workers] [chunkSize]
+class CampaignBenchmark{
+    public static void main(String[] args) {
+        int recipientCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int workerCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        EmailTemplateRegistry.register("coupon", new CustomEmail("{{name}}, your coupon is here", "Hi {{name}}, use {{code}} for 20% off"));
+
+        // recipients are generated lazily, like rows streamed from a database cursor
+        Iterable<Recipient> recipients = () -> new Iterator<Recipient>(){
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < recipientCount;
+            }
+
+            @Override
+            public Recipient next() {
+                int id = next++;
+
+                return new Recipient("user" + id + "@abc.com", "user" + id, "TUF20");
+            }
+        };
+
+        CountingEmailSink sink = new CountingEmailSink();
+
+        try(CampaignSender sender = new CampaignSender(sink, workerCount, chunkSize, workerCount * 4)){
+            CampaignReport report = sender.sendBatch("coupon", recipients);
+
+            System.out.println(report);
+            System.out.println("delivered:" + sink.messages.sum() + " characters:" + sink.characters.sum());
+        }
     }
 }
@@ -11,6 +11,610 @@ Cons:
     - Used with parameters, often confused with factory pattern.
 */
 
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Striped counter(LongAdder-style):
+    // a single shared counter makes every core write to the same cache line and "count++" loses updates.
+    // instead each thread adds into one of many cells and reads sum up all the cells.
+class StripedCounter{
+    // each cell is spaced 16 longs(128 bytes) apart so that two cells never share a cache line(false sharing).
+    private static final int PADDING = 16;
+
+    // per thread hash used to pick the cell, changed when the cell is contended.
+    private static final ThreadLocal<int[]> probe = ThreadLocal.withInitial(() -> new int[]{ seed() });
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    public StripedCounter(){
+        // power of 2 stripes so that cell index is a cheap mask instead of modulo.
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+
+        this.mask = stripes - 1;
+        this.cells = new AtomicLongArray(stripes * PADDING);
+    }
+
+    public void increment(){
+        add(1);
+    }
+
+    public void add(long value){
+        int[] threadProbe = probe.get();
+        int index = (threadProbe[0] & mask) * PADDING;
+        long current = cells.get(index);
+
+        if(!cells.compareAndSet(index, current, current + value)){
+            // contended: move this thread to another cell for the next updates and add unconditionally.
+            threadProbe[0] = rehash(threadProbe[0]);
+
+            cells.getAndAdd(index, value);
+        }
+    }
+
+    // cheap read path: no locking, sum of all cells at the time of reading(not an atomic view across cells).
+    public long snapshot(){
+        long sum = 0;
+
+        for(int i = 0; i <= mask; i++){
+            sum += cells.get(i * PADDING);
+        }
+
+        return sum;
+    }
+
+    private static int seed(){
+        long id = Thread.currentThread().threadId();
+        int hash = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+
+        return hash ^ (hash >>> 16);
+    }
+
+    // xorshift, same idea as LongAdder's probe rehash.
+    private static int rehash(int hash){
+        hash ^= hash << 13;
+        hash ^= hash >>> 17;
+        hash ^= hash << 5;
+
+        return hash;
+    }
+}
+
+// HDR-style latency histogram:
+    // values are bucketed by power of 2 magnitude and each magnitude is split into 32 linear sub-buckets,
+    // so relative error stays ~3% from nanoseconds to a minute with a fixed array and no allocation on record.
+class LatencyHistogram{
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // values above 2^36 ns(~68s) are clamped into the last bucket.
+    private static final int MAX_MAGNITUDE = 36;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+
+    public void record(long valueNanos){
+        counts.incrementAndGet(indexOf(Math.min(Math.max(valueNanos, 0), MAX_VALUE)));
+    }
+
+    // copies the counts so that percentiles can be computed without stalling writers.
+    public long[] snapshot(){
+        long[] copy = new long[counts.length()];
+
+        for(int i = 0; i < copy.length; i++){
+            copy[i] = counts.get(i);
+        }
+
+        return copy;
+    }
+
+    public static long percentile(long[] snapshot, double percentile){
+        long total = 0;
+
+        for(long count: snapshot){
+            total += count;
+        }
+
+        if(total == 0){
+            return 0;
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+
+        for(int i = 0; i < snapshot.length; i++){
+            seen += snapshot[i];
+
+            if(seen >= rank){
+                return valueOf(i);
+            }
+        }
+
+        return MAX_VALUE;
+    }
+
+    private static int indexOf(long value){
+        if(value < SUB_BUCKETS){
+            return (int)value;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+
+        // top SUB_BUCKET_BITS bits below the highest bit pick the linear sub-bucket.
+        return (shift + 1) * SUB_BUCKETS + (int)(value >>> shift) - SUB_BUCKETS;
+    }
+
+    // lowest value that falls into the bucket.
+    private static long valueOf(int index){
+        if(index < SUB_BUCKETS){
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+
+        return (long)(index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+}
+
+// Sliding window rate: ring of per-second buckets, each bucket stamped with the second it counts.
+    // a bucket from an older second is reset by whichever thread first sees it stale(a few concurrent
+    // increments at the second boundary can be dropped, acceptable for a rate).
+class SlidingWindowRate{
+    private final int windowSeconds;
+
+    private final AtomicLongArray counts;
+
+    private final AtomicLongArray stamps;
+
+    public SlidingWindowRate(int windowSeconds){
+        this.windowSeconds = windowSeconds;
+        this.counts = new AtomicLongArray(windowSeconds);
+        this.stamps = new AtomicLongArray(windowSeconds);
+    }
+
+    public void record(long nowSeconds){
+        int index = (int)(nowSeconds % windowSeconds);
+        long stamp = stamps.get(index);
+
+        if(stamp != nowSeconds && stamps.compareAndSet(index, stamp, nowSeconds)){
+            counts.set(index, 0);
+        }
+
+        counts.incrementAndGet(index);
+    }
+
+    // events per second over the completed seconds of the window.
+    public double ratePerSecond(long nowSeconds){
+        long total = 0;
+
+        for(int i = 0; i < windowSeconds; i++){
+            long stamp = stamps.get(i);
+
+            if(stamp < nowSeconds && stamp >= nowSeconds - windowSeconds){
+                total += counts.get(i);
+            }
+        }
+
+        return (double)total / windowSeconds;
+    }
+}
+
+// metrics of a single (problem, language) pair
+class SubmissionMetrics{
+    private final StripedCounter runs = new StripedCounter();
+    private final StripedCounter failures = new StripedCounter();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final SlidingWindowRate rate = new SlidingWindowRate(60);
+
+    public void record(long elapsedNanos, boolean passed){
+        runs.increment();
+
+        if(!passed){
+            failures.increment();
+        }
+
+        latency.record(elapsedNanos);
+        rate.record(MetricsRegistry.nowSeconds());
+    }
+
+    public MetricsSnapshot snapshot(String problemID, String language){
+        long[] buckets = latency.snapshot();
+
+        return new MetricsSnapshot(problemID, language, runs.snapshot(), failures.snapshot(),
+            LatencyHistogram.percentile(buckets, 50), LatencyHistogram.percentile(buckets, 99),
+            rate.ratePerSecond(MetricsRegistry.nowSeconds()));
+    }
+}
+
+// immutable point-in-time view handed to dashboards
+class MetricsSnapshot{
+    public final String problemID;
+    public final String language;
+    public final long runs;
+    public final long failures;
+    public final long p50Nanos;
+    public final long p99Nanos;
+    public final double runsPerSecond;
+
+    public MetricsSnapshot(String problemID, String language, long runs, long failures, long p50Nanos, long p99Nanos, double runsPerSecond){
+        this.problemID = problemID;
+        this.language = language;
+        this.runs = runs;
+        this.failures = failures;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.runsPerSecond = runsPerSecond;
+    }
+
+    @Override
+    public String toString(){
+        return "problem:"+problemID+" language:"+language+" runs:"+runs+" failures:"+failures
+            +" p50(ns):"+p50Nanos+" p99(ns):"+p99Nanos+" runs/s:"+runsPerSecond;
+    }
+}
+
+// Registry keyed by problem ID and then language.
+    // two level map instead of a composite key, so that recording an existing pair allocates nothing.
+class MetricsRegistry{
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, SubmissionMetrics>> metrics = new ConcurrentHashMap<>();
+
+    public void record(String problemID, String language, long elapsedNanos, boolean passed){
+        metricsFor(problemID, language).record(elapsedNanos, passed);
+    }
+
+    public SubmissionMetrics metricsFor(String problemID, String language){
+        ConcurrentHashMap<String, SubmissionMetrics> byLanguage = metrics.get(problemID);
+
+        // computeIfAbsent only on the first record of a pair, plain get() afterwards.
+        if(byLanguage == null){
+            byLanguage = metrics.computeIfAbsent(problemID, key -> new ConcurrentHashMap<>());
+        }
+
+        SubmissionMetrics submissionMetrics = byLanguage.get(language);
+
+        if(submissionMetrics == null){
+            submissionMetrics = byLanguage.computeIfAbsent(language, key -> new SubmissionMetrics());
+        }
+
+        return submissionMetrics;
+    }
+
+    // lock-free read: iterating ConcurrentHashMap and reading atomics never blocks the writers.
+    public List<MetricsSnapshot> snapshot(){
+        List<MetricsSnapshot> snapshots = new ArrayList<>();
+
+        metrics.forEach((problemID, byLanguage) -> 
+            byLanguage.forEach((language, submissionMetrics) -> 
+                snapshots.add(submissionMetrics.snapshot(problemID, language))));
+
+        return snapshots;
+    }
+
+    static long nowSeconds(){
+        return System.nanoTime() / 1_000_000_000L;
+    }
+}
+
+// Append-only file made of fixed size memory-mapped segments(analytics-00000.bin, analytics-00001.bin,...).
+    // a record never spans two segments, when it doesn't fit the current segment is forced and the next one is mapped.
+    // unused tail of a segment stays zero, so a record length of 0 marks the end of the data.
+class MappedSegmentWriter implements Closeable{
+    private final Path directory;
+
+    private final long segmentBytes;
+
+    private int segmentIndex;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer segment;
+
+    public MappedSegmentWriter(Path directory, long segmentBytes) throws IOException{
+        if(segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("segment size must be between 1 and 2GB");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.segmentIndex = nextSegmentIndex(directory);
+    }
+
+    public void append(ByteBuffer record) throws IOException{
+        if(record.remaining() > segmentBytes){
+            throw new IllegalArgumentException("record is larger than the segment size");
+        }
+
+        if(segment == null || segment.remaining() < record.remaining()){
+            roll();
+        }
+
+        segment.put(record);
+    }
+
+    public long segmentBytes(){
+        return segmentBytes;
+    }
+
+    private void roll() throws IOException{
+        closeSegment();
+
+        Path file = directory.resolve(String.format("analytics-%05d.bin", segmentIndex++));
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+
+    private void closeSegment() throws IOException{
+        if(segment != null){
+            segment.force();
+            channel.close();
+
+            segment = null;
+        }
+    }
+
+    // continue after the segments written before a restart instead of overwriting them.
+    private static int nextSegmentIndex(Path directory) throws IOException{
+        int next = 0;
+
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "analytics-*.bin")){
+            for(Path file: files){
+                String name = file.getFileName().toString();
+
+                next = Math.max(next, Integer.parseInt(name.substring(10, name.length() - 4)) + 1);
+            }
+        }
+
+        return next;
+    }
+
+    @Override
+    public void close() throws IOException{
+        closeSegment();
+    }
+}
+
+// Periodic off-thread exporter:
+    // request threads only update counters, a single daemon scheduler thread reads snapshots
+    // and appends one delta record per interval, so no request thread ever waits on I/O.
+//
+// Record layout(big endian):
+    // int length(of the rest of the record), long epochMillis, long runClicksDelta, int entryCount,
+    // entries: short problemLength, problem(UTF-8), short languageLength, language(UTF-8),
+    //          long runsDelta, long failuresDelta, long p50Nanos, long p99Nanos
+class AnalyticsExporter implements Closeable{
+    private final JudgeAnalytics judgeAnalytics;
+
+    private final MappedSegmentWriter writer;
+
+    private final ScheduledExecutorService scheduler;
+
+    // what was exported so far, owned by the JudgeAnalytics instance so a later exporter continues from it
+        // instead of writing the totals again; only touched by the scheduler thread of the running exporter.
+    static final class Baseline{
+        final Map<String, long[]> previous = new HashMap<>();
+
+        long previousClicks;
+    }
+
+    private final Baseline baseline;
+
+    // only touched by the scheduler thread
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(4096);
+
+    // one exporter per JudgeAnalytics at a time, two would both export the same increments
+    public AnalyticsExporter(JudgeAnalytics judgeAnalytics, Path directory, long segmentBytes, long intervalMillis) throws IOException{
+        this.judgeAnalytics = judgeAnalytics;
+        this.baseline = judgeAnalytics.acquireExportBaseline();
+
+        try{
+            this.writer = new MappedSegmentWriter(directory, segmentBytes);
+        } catch(IOException | RuntimeException ex){
+            judgeAnalytics.releaseExportBaseline();
+
+            throw ex;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "judge-analytics-exporter");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        this.scheduler.scheduleAtFixedRate(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(){
+        try{
+            long clicks = judgeAnalytics.snapshot();
+            long clicksDelta = clicks - baseline.previousClicks;
+            List<MetricsSnapshot> changed = changedSnapshots();
+            int next = 0;
+
+            // a delta larger than a segment is split over several records, only the first carries the clicks.
+            do{
+                int end = encodeDelta(clicksDelta, changed, next);
+
+                writer.append(recordBuffer);
+
+                // baselines move only once their record is in the segment, a failed append is retried next interval.
+                baseline.previousClicks = clicks;
+                clicksDelta = 0;
+
+                for(int i = next; i < end; i++){
+                    MetricsSnapshot snapshot = changed.get(i);
+                    long[] last = baseline.previous.computeIfAbsent(key(snapshot), key -> new long[2]);
+
+                    last[0] = snapshot.runs;
+                    last[1] = snapshot.failures;
+                }
+
+                next = end;
+            } while(next < changed.size());
+        } catch(IOException | RuntimeException ex){
+            // an exception would cancel the schedule, skip this interval instead.
+            System.out.println("Exception while exporting analytics:" + ex.getMessage());
+        }
+    }
+
+    // idle pairs are left out to keep the records compact.
+    private List<MetricsSnapshot> changedSnapshots(){
+        List<MetricsSnapshot> changed = new ArrayList<>();
+
+        for(MetricsSnapshot snapshot: judgeAnalytics.metrics().snapshot()){
+            long[] last = baseline.previous.getOrDefault(key(snapshot), new long[2]);
+
+            if(snapshot.runs != last[0] || snapshot.failures != last[1]){
+                changed.add(snapshot);
+            }
+        }
+
+        return changed;
+    }
+
+    private static String key(MetricsSnapshot snapshot){
+        return snapshot.problemID + "\u0000" + snapshot.language;
+    }
+
+    // encodes changed[from..] into recordBuffer until the segment size is reached, returns the end index.
+    private int encodeDelta(long clicksDelta, List<MetricsSnapshot> changed, int from){
+        recordBuffer.clear();
+        recordBuffer.putInt(0);
+        recordBuffer.putLong(System.currentTimeMillis());
+        recordBuffer.putLong(clicksDelta);
+
+        int countPosition = recordBuffer.position();
+        int end = from;
+
+        recordBuffer.putInt(0);
+
+        for(; end < changed.size(); end++){
+            MetricsSnapshot snapshot = changed.get(end);
+            long[] last = baseline.previous.getOrDefault(key(snapshot), new long[2]);
+
+            byte[] problem = snapshot.problemID.getBytes(StandardCharsets.UTF_8);
+            byte[] language = snapshot.language.getBytes(StandardCharsets.UTF_8);
+            int entryBytes = 4 + problem.length + language.length + 32;
+
+            // every record takes at least one entry, an entry alone larger than a segment fails in append.
+            if(end > from && recordBuffer.position() + entryBytes > writer.segmentBytes()){
+                break;
+            }
+
+            ensureCapacity(entryBytes);
+
+            recordBuffer.putShort((short)problem.length).put(problem);
+            recordBuffer.putShort((short)language.length).put(language);
+            recordBuffer.putLong(snapshot.runs - last[0]).putLong(snapshot.failures - last[1]);
+            recordBuffer.putLong(snapshot.p50Nanos).putLong(snapshot.p99Nanos);
+        }
+
+        recordBuffer.putInt(countPosition, end - from);
+        recordBuffer.putInt(0, recordBuffer.position() - 4);
+        recordBuffer.flip();
+
+        return end;
+    }
+
+    private void ensureCapacity(int bytes){
+        if(recordBuffer.remaining() < bytes){
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(recordBuffer.capacity() * 2, recordBuffer.position() + bytes));
+
+            recordBuffer.flip();
+            larger.put(recordBuffer);
+            recordBuffer = larger;
+        }
+    }
+
+    // stops the schedule, writes the last delta and forces the segment to disk.
+    @Override
+    public void close() throws IOException{
+        scheduler.shutdown();
+
+        try{
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+
+        try{
+            flush();
+            writer.close();
+        } finally {
+            judgeAnalytics.releaseExportBaseline();
+        }
+    }
+}
+
+// Text exporter in Prometheus exposition format, meant to be served on a scrape endpoint.
+class PrometheusExporter{
+    public static String scrape(JudgeAnalytics judgeAnalytics){
+        StringBuilder out = new StringBuilder(1024);
+        List<MetricsSnapshot> snapshots = judgeAnalytics.metrics().snapshot();
+
+        out.append("# TYPE judge_run_clicks_total counter\n");
+        out.append("judge_run_clicks_total ").append(judgeAnalytics.snapshot()).append('\n');
+
+        out.append("# TYPE judge_runs_total counter\n");
+        for(MetricsSnapshot snapshot: snapshots){
+            labels(out.append("judge_runs_total"), snapshot, null).append(' ').append(snapshot.runs).append('\n');
+        }
+
+        out.append("# TYPE judge_run_failures_total counter\n");
+        for(MetricsSnapshot snapshot: snapshots){
+            labels(out.append("judge_run_failures_total"), snapshot, null).append(' ').append(snapshot.failures).append('\n');
+        }
+
+        out.append("# TYPE judge_run_latency_seconds summary\n");
+        for(MetricsSnapshot snapshot: snapshots){
+            labels(out.append("judge_run_latency_seconds"), snapshot, "0.5").append(' ').append(snapshot.p50Nanos / 1e9).append('\n');
+            labels(out.append("judge_run_latency_seconds"), snapshot, "0.99").append(' ').append(snapshot.p99Nanos / 1e9).append('\n');
+        }
+
+        out.append("# TYPE judge_runs_per_second gauge\n");
+        for(MetricsSnapshot snapshot: snapshots){
+            labels(out.append("judge_runs_per_second"), snapshot, null).append(' ').append(snapshot.runsPerSecond).append('\n');
+        }
+
+        return out.toString();
+    }
+
+    private static StringBuilder labels(StringBuilder out, MetricsSnapshot snapshot, String quantile){
+        escape(out.append("{problem=\""), snapshot.problemID);
+        escape(out.append("\",language=\""), snapshot.language);
+
+        if(quantile != null){
+            out.append("\",quantile=\"").append(quantile);
+        }
+
+        return out.append("\"}");
+    }
+
+    private static void escape(StringBuilder out, String value){
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+
+            if(c == '\\' || c == '"'){
+                out.append('\\').append(c);
+            } else if(c == '\n'){
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+}
+
 class JudgeAnalytics{
     // eager loading: thread safe
         // problem: object is created when class is loaded, even though singleton object is not used anywhere wasting resources.
@@ -20,17 +624,52 @@ class JudgeAnalytics{
         // volatile: stating read the data from main memory instead of cache, ensuring all threads have updated instance data.
     // private static volatile JudgeAnalytics judgeAnalyticsObj;
 
-    private static int runClicks;
+    // problem: runClicks++ is read-modify-write, concurrent "Run" clicks lose updates.
+    // private static int runClicks;
+
+    private static final StripedCounter runClicks = new StripedCounter();
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    private final AnalyticsExporter.Baseline exportBaseline = new AnalyticsExporter.Baseline();
+
+    private final AtomicBoolean exporting = new AtomicBoolean();
 
     // restricting other classes not to use default constructor.
     private JudgeAnalytics(){}
 
-    public int getClicks(){
-        return runClicks;
+    public long getClicks(){
+        return runClicks.snapshot();
+    }
+
+    public long snapshot(){
+        return runClicks.snapshot();
     }
 
     public void incrementClick(){
-        runClicks++;
+        runClicks.increment();
+    }
+
+    // per problem and per language metrics(TUFCompiler records into it)
+    public MetricsRegistry metrics(){
+        return metrics;
+    }
+
+    // flushes delta records into rolling memory-mapped segments under the directory every interval.
+    public AnalyticsExporter startExporter(Path directory, long segmentBytes, long intervalMillis) throws IOException{
+        return new AnalyticsExporter(this, directory, segmentBytes, intervalMillis);
+    }
+
+    AnalyticsExporter.Baseline acquireExportBaseline(){
+        if(!exporting.compareAndSet(false, true)){
+            throw new IllegalStateException("an analytics exporter is already running");
+        }
+
+        return exportBaseline;
+    }
+
+    void releaseExportBaseline(){
+        exporting.set(false);
     }
 
     // Creating Singleton Instance Methods in Multi-threading Environment:
@@ -88,5 +727,51 @@ public class Singleton {
         System.out.println(judgeAnalytics2);
 
        System.out.println(judgeAnalytics1.getClicks());
+
+        // multiple request threads clicking "Run" concurrently, no updates are lost.
+        Thread[] requestThreads = new Thread[8];
+
+        for(int i = 0; i < requestThreads.length; i++){
+            requestThreads[i] = new Thread(() -> {
+                for(int click = 0; click < 100_000; click++){
+                    JudgeAnalytics.getInstance().incrementClick();
+                }
+            });
+
+            requestThreads[i].start();
+        }
+
+        for(Thread requestThread: requestThreads){
+            try{
+                requestThread.join();
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        System.out.println(JudgeAnalytics.getInstance().snapshot());
+
+        MetricsRegistry metrics = JudgeAnalytics.getInstance().metrics();
+        metrics.record("P_001", "cpp", 1_200_000, true);
+        metrics.record("P_001", "cpp", 3_400_000, false);
+        metrics.record("P_001", "java", 5_000_000, true);
+
+        for(MetricsSnapshot snapshot: metrics.snapshot()){
+            System.out.println(snapshot);
+        }
+
+        System.out.print(PrometheusExporter.scrape(JudgeAnalytics.getInstance()));
+
+        try{
+            AnalyticsExporter exporter = JudgeAnalytics.getInstance().startExporter(
+                Files.createTempDirectory("judge-analytics"), 64 * 1024, 1000);
+
+            metrics.record("P_002", "python", 2_000_000, true);
+
+            // close() writes the last delta record and forces the segment to disk.
+            exporter.close();
+        } catch(IOException ex){
+            System.out.println("Exception while exporting analytics:" + ex.getMessage());
+        }
     }
 }
@@ -14,6 +14,11 @@ Cons:
 
 
 */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 interface PaymentGateway{
     void pay(String orderId, double amount);
 }
@@ -25,10 +30,32 @@ class PayUGoGateway implements PaymentGateway{
     }
 }
 
+class PaymentRequest{
+    final String orderId;
+
+    final double amount;
+
+    public PaymentRequest(String orderId, double amount){
+        this.orderId = orderId;
+
+        this.amount = amount;
+    }
+}
+
 class RazorPayAPI {
     public void makePayment(String orderId, double amount){
         System.out.println("Making payment through Razor Pay");
     }
+
+    // stand-in for the provider's batch endpoint, result[i] tells whether payments[i] succeeded
+    public boolean[] makeBulkPayment(List<PaymentRequest> payments){
+        System.out.println("Making bulk payment of "+payments.size()+" orders through Razor Pay");
+
+        boolean[] result = new boolean[payments.size()];
+        Arrays.fill(result, true);
+
+        return result;
+    }
 }
 
 // Adpater Class
@@ -45,6 +72,451 @@ class RazorPayGateway implements PaymentGateway{
     }
 }
 
+// Batching Adapter:
+    // pay calls are buffered and sent as one bulk call once maxBatchSize payments are waiting
+    // or maxDelayMillis passed since the first one, every caller gets completion of its own payment.
+class BatchingRazorPayGateway implements PaymentGateway, AutoCloseable{
+    private static class PendingPayment{
+        final PaymentRequest request;
+
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        PendingPayment(PaymentRequest request){
+            this.request = request;
+        }
+    }
+
+    private final RazorPayAPI razorPayAPIInstance;
+
+    private final int maxBatchSize;
+
+    private final long maxDelayMillis;
+
+    // single flusher thread: bulk calls are sent one at a time and timers fire on it
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "razorpay-batch-flusher");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    // guarded by this
+    private List<PendingPayment> pending = new ArrayList<>();
+
+    // timer of the current batch, guarded by this
+    private ScheduledFuture<?> timer;
+
+    // guarded by this, once set no payment is buffered and nothing new is handed to the flusher
+    private boolean closed;
+
+    public BatchingRazorPayGateway(int maxBatchSize, long maxDelayMillis){
+        this.razorPayAPIInstance = new RazorPayAPI();
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    // blocks until the batch holding this payment is flushed, like the direct adapter
+    @Override
+    public void pay(String orderId, double amount) {
+        payAsync(orderId, amount).join();
+    }
+
+    public CompletableFuture<Void> payAsync(String orderId, double amount){
+        PendingPayment payment = new PendingPayment(new PaymentRequest(orderId, amount));
+
+        synchronized(this){
+            if(closed){
+                payment.completion.completeExceptionally(new IllegalStateException("gateway is closed, payment not sent for order:" + orderId));
+
+                return payment.completion;
+            }
+
+            pending.add(payment);
+
+            if(pending.size() >= maxBatchSize){
+                List<PendingPayment> batch = pending;
+                pending = new ArrayList<>();
+
+                if(timer != null){
+                    timer.cancel(false);
+                    timer = null;
+                }
+
+                // handed over under the lock, so close() can't shut the flusher down in between
+                flusher.execute(() -> flush(batch));
+            } else if(pending.size() == 1){
+                // first payment of a new batch starts the timer, it only ever flushes that batch
+                List<PendingPayment> batch = pending;
+
+                timer = flusher.schedule(() -> flushPending(batch), maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return payment.completion;
+    }
+
+    // timer flush: a batch that was already sent because it filled up is not flushed again
+    private void flushPending(List<PendingPayment> expected){
+        List<PendingPayment> batch;
+
+        synchronized(this){
+            if(expected != null && pending != expected){
+                return;
+            }
+
+            batch = pending;
+            pending = new ArrayList<>();
+            timer = null;
+        }
+
+        flush(batch);
+    }
+
+    private void flush(List<PendingPayment> batch){
+        if(batch.isEmpty()){
+            return;
+        }
+
+        List<PaymentRequest> requests = new ArrayList<>(batch.size());
+
+        for(PendingPayment payment: batch){
+            requests.add(payment.request);
+        }
+
+        try{
+            boolean[] result = this.razorPayAPIInstance.makeBulkPayment(requests);
+
+            for(int i = 0; i < batch.size(); i++){
+                if(result[i]){
+                    batch.get(i).completion.complete(null);
+                } else {
+                    batch.get(i).completion.completeExceptionally(new IllegalStateException("payment failed for order:" + requests.get(i).orderId));
+                }
+            }
+        } catch(RuntimeException ex){
+            for(PendingPayment payment: batch){
+                payment.completion.completeExceptionally(ex);
+            }
+        }
+    }
+
+    // flushes what is still buffered and stops the flusher
+    @Override
+    public void close(){
+        synchronized(this){
+            if(closed){
+                return;
+            }
+
+            closed = true;
+
+            flusher.execute(() -> flushPending(null));
+            flusher.shutdown();
+        }
+
+        try{
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+class GatewayUnavailableException extends RuntimeException{
+    private static final long serialVersionUID = 1L;
+
+    public GatewayUnavailableException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
+
+// the provider may or may not have charged the order(e.g. timed out call), it has to be reconciled, never retried elsewhere
+class PaymentOutcomeUnknownException extends GatewayUnavailableException{
+    private static final long serialVersionUID = 1L;
+
+    private final String orderId;
+
+    public PaymentOutcomeUnknownException(String orderId, String message, Throwable cause){
+        super(message, cause);
+        this.orderId = orderId;
+    }
+
+    public String getOrderId(){
+        return orderId;
+    }
+}
+
+// Fake gateway for tests: adds latency and fails a given fraction of payments.
+class FaultInjectingGateway implements PaymentGateway{
+    private final long latencyMillis;
+
+    private final double failureRate;
+
+    public FaultInjectingGateway(long latencyMillis, double failureRate){
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public void pay(String orderId, double amount) {
+        try{
+            Thread.sleep(latencyMillis);
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("payment interrupted for order:" + orderId);
+        }
+
+        if(ThreadLocalRandom.current().nextDouble() < failureRate){
+            throw new IllegalStateException("injected failure for order:" + orderId);
+        }
+    }
+}
+
+// log2 latency buckets, enough to see the tail of a gateway
+class LatencyHistogram{
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    public void record(long nanos){
+        buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+    }
+
+    // upper bound of the bucket holding the percentile
+    public long percentileNanos(double percentile){
+        long total = 0;
+
+        for(int i = 0; i < buckets.length(); i++){
+            total += buckets.get(i);
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+
+        for(int i = 0; i < buckets.length(); i++){
+            seen += buckets.get(i);
+
+            if(seen >= rank){
+                return (1L << (i + 1)) - 1;
+            }
+        }
+
+        return 0;
+    }
+}
+
+// Circuit breaker over the outcome of the last windowSize calls:
+    // CLOSED -> OPEN when the failure rate reaches the threshold,
+    // OPEN -> HALF_OPEN after openMillis(one trial call), HALF_OPEN -> CLOSED on success or back to OPEN on failure.
+class CircuitBreaker{
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean[] failures;
+
+    private final double failureRateThreshold;
+
+    private final long openMillis;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int recorded;
+    private int next;
+    private int failureCount;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long openMillis){
+        this.failures = new boolean[windowSize];
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public synchronized boolean allowRequest(){
+        if(state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis){
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+
+        if(state == State.HALF_OPEN){
+            if(trialInFlight){
+                return false;
+            }
+
+            trialInFlight = true;
+
+            return true;
+        }
+
+        return state == State.CLOSED;
+    }
+
+    public synchronized void onSuccess(){
+        if(state == State.HALF_OPEN){
+            reset(State.CLOSED);
+
+            return;
+        }
+
+        record(false);
+    }
+
+    public synchronized void onFailure(){
+        if(state == State.HALF_OPEN){
+            open();
+
+            return;
+        }
+
+        record(true);
+
+        if(recorded == failures.length && failureCount >= failureRateThreshold * failures.length){
+            open();
+        }
+    }
+
+    public synchronized State state(){
+        return state;
+    }
+
+    private void record(boolean failed){
+        if(recorded == failures.length){
+            failureCount -= failures[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+
+        failures[next] = failed;
+        failureCount += failed ? 1 : 0;
+        next = (next + 1) % failures.length;
+    }
+
+    private void open(){
+        reset(State.OPEN);
+
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void reset(State newState){
+        state = newState;
+        recorded = 0;
+        next = 0;
+        failureCount = 0;
+        Arrays.fill(failures, false);
+    }
+}
+
+// Resilience Decorator around any PaymentGateway(adapter or not):
+    // bulkhead(max concurrent calls), timeout and circuit breaker,
+    // calls that were never sent(bulkhead full, circuit open) or failed go to the fallback gateway when there is one,
+    // otherwise fail fast; a timed out call may still charge, so it fails with PaymentOutcomeUnknownException instead.
+class ResilientGateway implements PaymentGateway{
+    // timed out calls keep running on their own virtual thread instead of holding the caller
+    private static final ExecutorService callExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final String name;
+
+    private final PaymentGateway gateway;
+
+    private final PaymentGateway fallback;
+
+    private final Semaphore bulkhead;
+
+    private final long timeoutMillis;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public ResilientGateway(String name, PaymentGateway gateway, PaymentGateway fallback, int maxConcurrentCalls, long timeoutMillis, CircuitBreaker circuitBreaker){
+        this.name = name;
+        this.gateway = gateway;
+        this.fallback = fallback;
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        this.timeoutMillis = timeoutMillis;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public void pay(String orderId, double amount) {
+        // bulkhead first: a full bulkhead is not a gateway failure, so the breaker never hears of it
+        if(!bulkhead.tryAcquire()){
+            fallbackOrFail(orderId, amount, "bulkhead full for " + name, null);
+
+            return;
+        }
+
+        if(!circuitBreaker.allowRequest()){
+            bulkhead.release();
+
+            fallbackOrFail(orderId, amount, "circuit open for " + name, null);
+
+            return;
+        }
+
+        long start = System.nanoTime();
+        Future<?> call;
+
+        try{
+            // the permit is held as long as the provider call runs, a timed out call still counts against the bulkhead
+            call = callExecutor.submit(() -> {
+                try{
+                    gateway.pay(orderId, amount);
+                } finally {
+                    bulkhead.release();
+                }
+            });
+        } catch(RejectedExecutionException ex){
+            bulkhead.release();
+
+            throw ex;
+        }
+
+        Throwable failure;
+
+        try{
+            call.get(timeoutMillis, TimeUnit.MILLISECONDS);
+
+            circuitBreaker.onSuccess();
+
+            return;
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            circuitBreaker.onFailure();
+
+            throw new PaymentOutcomeUnknownException(orderId, "payment interrupted for " + name, ex);
+        } catch(TimeoutException ex){
+            // the call is left running, interrupting it would not undo a charge the provider already made
+            circuitBreaker.onFailure();
+
+            throw new PaymentOutcomeUnknownException(orderId, "payment timed out through " + name + ", outcome unknown", ex);
+        } catch(ExecutionException ex){
+            circuitBreaker.onFailure();
+
+            failure = ex.getCause();
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+
+        // outside the primary's permit and latency
+        fallbackOrFail(orderId, amount, "payment failed through " + name, failure);
+    }
+
+    private void fallbackOrFail(String orderId, double amount, String reason, Throwable cause){
+        if(fallback == null){
+            throw new GatewayUnavailableException(reason, cause);
+        }
+
+        fallback.pay(orderId, amount);
+    }
+
+    public CircuitBreaker.State circuitState(){
+        return circuitBreaker.state();
+    }
+
+    public LatencyHistogram latency(){
+        return latency;
+    }
+}
+
 class CheckoutService{
     private PaymentGateway paymentGateway;
 
@@ -64,5 +536,36 @@ public class Adapter {
 
         CheckoutService checkoutService2 = new CheckoutService(new RazorPayGateway());
         checkoutService2.processPayment("341324", 400);
+
+        // many concurrent checkouts through the batching adapter end up in a few bulk calls
+        try(BatchingRazorPayGateway batchingGateway = new BatchingRazorPayGateway(50, 20)){
+            List<CompletableFuture<Void>> payments = new ArrayList<>();
+
+            for(int order = 0; order < 120; order++){
+                payments.add(batchingGateway.payAsync("order-" + order, 100 + order));
+            }
+
+            for(CompletableFuture<Void> payment: payments){
+                payment.join();
+            }
+        }
+
+        // slow and failing provider: breaker opens and checkouts fall back to PayUGo instead of waiting
+        ResilientGateway resilientGateway = new ResilientGateway("razorpay", new FaultInjectingGateway(50, 0.6),
+            new PayUGoGateway(), 10, 100, new CircuitBreaker(10, 0.5, 1000));
+        CheckoutService checkoutService3 = new CheckoutService(resilientGateway);
+
+        for(int order = 0; order < 15; order++){
+            try{
+                checkoutService3.processPayment("order-" + order, 100);
+            } catch(PaymentOutcomeUnknownException ex){
+                // not sent to the fallback, the order is reconciled with the provider later
+                System.out.println("to reconcile:" + ex.getOrderId());
+            }
+        }
+
+        System.out.println("circuit:" + resilientGateway.circuitState()
+            + " p50(ms):" + resilientGateway.latency().percentileNanos(50) / 1_000_000
+            + " p99(ms):" + resilientGateway.latency().percentileNanos(99) / 1_000_000);
     }
 }
@@ -57,29 +57,319 @@ class Main{
 */
 
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+class VideoSegment{
+    final String quality;
+
+    final int index;
+
+    final ByteBuffer data;
+
+    public VideoSegment(String quality, int index, ByteBuffer data){
+        this.quality = quality;
+        this.index = index;
+        this.data = data;
+    }
+}
+
+// Local file-backed segment store: <root>/<title>/<quality>/segment-00000.bin, segment-00001.bin,...
+class SegmentStore{
+    private final Path root;
+
+    private final ConcurrentHashMap<Path, Integer> segmentCounts = new ConcurrentHashMap<>();
+
+    public SegmentStore(Path root){
+        this.root = root;
+    }
+
+    public Path segmentPath(String title, String quality, int index){
+        return root.resolve(title).resolve(quality).resolve(String.format("segment-%05d.bin", index));
+    }
+
+    public int segmentCount(String title, String quality){
+        return segmentCounts.computeIfAbsent(root.resolve(title).resolve(quality), directory -> {
+            int count = 0;
+
+            while(Files.exists(directory.resolve(String.format("segment-%05d.bin", count)))){
+                count++;
+            }
+
+            return count;
+        });
+    }
+
+    // stream based read: the whole segment is copied into a heap buffer
+    public ByteBuffer read(String title, String quality, int index){
+        try(InputStream in = Files.newInputStream(segmentPath(title, quality, index))){
+            return ByteBuffer.wrap(in.readAllBytes());
+        } catch(IOException ex){
+            throw new UncheckedIOException("Exception while loading segment:" + index, ex);
+        }
+    }
+
+    // writes a title with the given segment sizes per quality, for demos and tests
+    public void writeSample(String title, String quality, int segments, int segmentBytes) throws IOException{
+        byte[] data = new byte[segmentBytes];
+
+        for(int index = 0; index < segments; index++){
+            Path segment = segmentPath(title, quality, index);
+
+            Files.createDirectories(segment.getParent());
+            Arrays.fill(data, (byte)index);
+            Files.write(segment, data);
+        }
+
+        segmentCounts.clear();
+    }
+}
+
 // Implementor interface
 interface VideoQuality{
     void load(String title);
+
+    default String name(){
+        return getClass().getSimpleName();
+    }
+
+    // segmented loading, a quality without segments serves the whole title as one segment
+    default int segmentCount(String title){
+        return 1;
+    }
+
+    default VideoSegment loadSegment(String title, int index){
+        load(title);
+
+        return new VideoSegment(name(), index, ByteBuffer.allocate(0));
+    }
 }
 
 // concrete implementations
 class HDQuality implements VideoQuality{
+    // null when segments are not stored locally
+    private final SegmentStore store;
+
+    public HDQuality(){
+        this(null);
+    }
+
+    public HDQuality(SegmentStore store){
+        this.store = store;
+    }
 
     @Override
     public void load(String title) {
         System.out.println("HD quality loaded");
     }
 
+    @Override
+    public String name(){
+        return "hd";
+    }
+
+    @Override
+    public int segmentCount(String title){
+        return store == null ? 1 : store.segmentCount(title, name());
+    }
+
+    @Override
+    public VideoSegment loadSegment(String title, int index){
+        return store == null ? VideoQuality.super.loadSegment(title, index) : new VideoSegment(name(), index, store.read(title, name(), index));
+    }
+
 }
 
 // concrete implementations
 class UltraHDQuality implements VideoQuality{
+    // null when segments are not stored locally
+    private final SegmentStore store;
+
+    public UltraHDQuality(){
+        this(null);
+    }
+
+    public UltraHDQuality(SegmentStore store){
+        this.store = store;
+    }
 
     @Override
     public void load(String title) {
         System.out.println("HD quality loaded");
     }
 
+    @Override
+    public String name(){
+        return "uhd";
+    }
+
+    @Override
+    public int segmentCount(String title){
+        return store == null ? 1 : store.segmentCount(title, name());
+    }
+
+    @Override
+    public VideoSegment loadSegment(String title, int index){
+        return store == null ? VideoQuality.super.loadSegment(title, index) : new VideoSegment(name(), index, store.read(title, name(), index));
+    }
+
+}
+
+// Zero-copy loader: every segment file is memory-mapped and handed to the player as a read-only buffer,
+    // the bytes stay in the page cache(off-heap), so heap usage doesn't grow with the size of the title.
+class MappedSegmentQuality implements VideoQuality{
+    private final SegmentStore store;
+
+    private final String quality;
+
+    public MappedSegmentQuality(SegmentStore store, String quality){
+        this.store = store;
+        this.quality = quality;
+    }
+
+    @Override
+    public void load(String title) {
+        System.out.println(quality + " quality mapped");
+    }
+
+    @Override
+    public String name(){
+        return quality;
+    }
+
+    @Override
+    public int segmentCount(String title){
+        return store.segmentCount(title, quality);
+    }
+
+    @Override
+    public VideoSegment loadSegment(String title, int index){
+        // the mapping stays valid after the channel is closed and is released when the buffer is collected
+        try(FileChannel channel = FileChannel.open(store.segmentPath(title, quality, index), StandardOpenOption.READ)){
+            return new VideoSegment(quality, index, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch(IOException ex){
+            throw new UncheckedIOException("Exception while mapping segment:" + index, ex);
+        }
+    }
+}
+
+// Adaptive quality(still a VideoQuality, so any player can use it through the bridge):
+    // measures load throughput of every segment(moving average) and switches
+    // to the high quality above upBytesPerSecond and back to the low one below downBytesPerSecond.
+class AdaptiveQuality implements VideoQuality{
+    private final VideoQuality low;
+
+    private final VideoQuality high;
+
+    private final double upBytesPerSecond;
+
+    private final double downBytesPerSecond;
+
+    private volatile VideoQuality current;
+
+    // guarded by this
+    private double averageBytesPerSecond;
+
+    public AdaptiveQuality(VideoQuality low, VideoQuality high, double upBytesPerSecond, double downBytesPerSecond){
+        this.low = low;
+        this.high = high;
+        this.upBytesPerSecond = upBytesPerSecond;
+        this.downBytesPerSecond = downBytesPerSecond;
+        this.current = low;
+    }
+
+    @Override
+    public void load(String title) {
+        current.load(title);
+    }
+
+    @Override
+    public String name(){
+        return "adaptive(" + current.name() + ")";
+    }
+
+    // both qualities are cut at the same points, so segment i of either one can follow segment i - 1
+    @Override
+    public int segmentCount(String title){
+        return low.segmentCount(title);
+    }
+
+    @Override
+    public VideoSegment loadSegment(String title, int index){
+        long start = System.nanoTime();
+        VideoSegment segment = current.loadSegment(title, index);
+
+        onLoaded(segment.data.remaining(), System.nanoTime() - start);
+
+        return segment;
+    }
+
+    private synchronized void onLoaded(long bytes, long nanos){
+        double bytesPerSecond = bytes * 1e9 / Math.max(nanos, 1);
+
+        averageBytesPerSecond = averageBytesPerSecond == 0 ? bytesPerSecond : 0.7 * averageBytesPerSecond + 0.3 * bytesPerSecond;
+
+        if(current == low && averageBytesPerSecond > upBytesPerSecond){
+            current = high;
+        } else if(current == high && averageBytesPerSecond < downBytesPerSecond){
+            current = low;
+        }
+    }
+}
+
+// Loads the next `depth` segments in the background while the current one is played.
+class SegmentPrefetcher{
+    private final ExecutorService executor;
+
+    private final int depth;
+
+    public SegmentPrefetcher(ExecutorService executor, int depth){
+        this.executor = executor;
+        this.depth = depth;
+    }
+
+    public void stream(VideoQuality videoQuality, String title, Consumer<VideoSegment> player){
+        int segments = videoQuality.segmentCount(title);
+        Deque<Future<VideoSegment>> window = new ArrayDeque<>();
+        int next = 0;
+
+        for(; next < Math.min(depth + 1, segments); next++){
+            int index = next;
+
+            window.add(executor.submit(() -> videoQuality.loadSegment(title, index)));
+        }
+
+        while(!window.isEmpty()){
+            VideoSegment segment = await(window.poll());
+
+            // keep the window full before handing the segment to the player
+            if(next < segments){
+                int index = next++;
+
+                window.add(executor.submit(() -> videoQuality.loadSegment(title, index)));
+            }
+
+            player.accept(segment);
+        }
+    }
+
+    private static VideoSegment await(Future<VideoSegment> segment){
+        try{
+            return segment.get();
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("streaming interrupted", ex);
+        } catch(ExecutionException ex){
+            throw new IllegalStateException("Exception while loading segment", ex.getCause());
+        }
+    }
 }
 
 // Abstractions
@@ -91,6 +381,15 @@ abstract class VideoPlayer{
     }
 
     abstract void play(String title);
+
+    // segmented playback with background prefetching
+    public void stream(String title, SegmentPrefetcher prefetcher){
+        prefetcher.stream(this.videoQuality, title, this::render);
+    }
+
+    protected void render(VideoSegment segment){
+        System.out.println("Playing segment:" + segment.index + " quality:" + segment.quality + " bytes:" + segment.data.remaining());
+    }
 }
 
 // Refined Abstractions
@@ -131,5 +430,87 @@ public class Bridge {
         VideoPlayer player2 = new MobilePlayer(new UltraHDQuality());
         
         player2.play("Video-1");
+
+        // adaptive streaming from a local segment store, 2 segments prefetched ahead
+        try{
+            SegmentStore store = new SegmentStore(Files.createTempDirectory("segments"));
+            store.writeSample("Video-1", "hd", 8, 64 * 1024);
+            store.writeSample("Video-1", "uhd", 8, 256 * 1024);
+
+            VideoQuality adaptive = new AdaptiveQuality(new HDQuality(store), new UltraHDQuality(store), 50e6, 10e6);
+            ExecutorService prefetchExecutor = Executors.newFixedThreadPool(2);
+
+            new WebPlayer(adaptive).stream("Video-1", new SegmentPrefetcher(prefetchExecutor, 2));
+
+            prefetchExecutor.shutdown();
+        } catch(IOException ex){
+            System.out.println("Exception while preparing segments:" + ex.getMessage());
+        }
+    }
+}
+
+// Compares the stream based loader(heap copy per segment) with the memory-mapped one:
+    // java SegmentLoaderBenchmark [titleMB] [segmentMB]
+class SegmentLoaderBenchmark{
+    public static void main(String[] args) throws IOException {
+        int titleMB = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        int segmentMB = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        Path root = Files.createTempDirectory("segments");
+        ExecutorService prefetchExecutor = Executors.newFixedThreadPool(2);
+
+        try{
+            SegmentStore store = new SegmentStore(root);
+            store.writeSample("movie", "hd", titleMB / segmentMB, segmentMB * 1024 * 1024);
+
+            run("stream", new HDQuality(store), prefetchExecutor);
+            run("mapped", new MappedSegmentQuality(store, "hd"), prefetchExecutor);
+        } finally {
+            prefetchExecutor.shutdown();
+
+            // the sample title is gigabytes, never leave it behind
+            deleteRecursively(root);
+        }
+    }
+
+    private static void deleteRecursively(Path root) throws IOException{
+        List<Path> paths = new ArrayList<>();
+
+        try(Stream<Path> walk = Files.walk(root)){
+            walk.forEach(paths::add);
+        }
+
+        // children before their directory
+        for(int i = paths.size() - 1; i >= 0; i--){
+            Files.deleteIfExists(paths.get(i));
+        }
+    }
+
+    private static void run(String name, VideoQuality videoQuality, ExecutorService prefetchExecutor){
+        Runtime runtime = Runtime.getRuntime();
+        long[] bytes = new long[1];
+        long[] checksum = new long[1];
+        long[] peakHeap = new long[1];
+
+        System.gc();
+        long start = System.nanoTime();
+
+        new SegmentPrefetcher(prefetchExecutor, 2).stream(videoQuality, "movie", segment -> {
+            ByteBuffer data = segment.data;
+
+            // touch one byte per 4KB page, like a decoder reading the segment
+            for(int i = 0; i < data.limit(); i += 4096){
+                checksum[0] += data.get(i);
+            }
+
+            bytes[0] += data.limit();
+            peakHeap[0] = Math.max(peakHeap[0], runtime.totalMemory() - runtime.freeMemory());
+        });
+
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(name + " MB:" + bytes[0] / (1024 * 1024) + " elapsed(ms):" + elapsed / 1_000_000
+            + " MB/s:" + (long)(bytes[0] * 1e9 / elapsed / (1024 * 1024)) + " peak heap(MB):" + peakHeap[0] / (1024 * 1024)
+            + " checksum:" + checksum[0]);
     }
 }
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /* Problem:
@@ -112,7 +113,19 @@ interface CartItem{
     void display();
 }
 
-class Product implements CartItem{
+// Base of the cart nodes that keeps track of the bundles holding it(a product can be in many bundles),
+    // so a change can invalidate the cached totals above it.
+abstract class CartNode implements CartItem{
+    protected final List<ProductBundle> parents = new ArrayList<>();
+
+    protected void invalidateParents(){
+        for(ProductBundle parent: parents){
+            parent.invalidate();
+        }
+    }
+}
+
+class Product extends CartNode{
     private String name;
 
     private double price;
@@ -122,6 +135,16 @@ class Product implements CartItem{
         this.price = price;
     }
 
+    public void setPrice(double price){
+        this.price = price;
+
+        invalidateParents();
+    }
+
+    public String getName(){
+        return name;
+    }
+
     @Override
     public double getprice(){
         return price;
@@ -133,11 +156,16 @@ class Product implements CartItem{
     }
 }
 
-class ProductBundle implements CartItem{
+class ProductBundle extends CartNode{
     List<CartItem> bundle;
 
     String bundleName;
 
+    // cached total of the bundle, valid until a child changes
+    private double cachedPrice;
+
+    private boolean priceValid;
+
     public ProductBundle(String bundleName){
         this.bundleName = bundleName;
 
@@ -146,29 +174,623 @@ class ProductBundle implements CartItem{
 
     public void addProduct(CartItem item){
         bundle.add(item);
+
+        if(item instanceof CartNode){
+            ((CartNode)item).parents.add(this);
+        }
+
+        invalidate();
+    }
+
+    // Invalidates this bundle and the bundles above it.
+        // stops at bundles that are already invalid, so a change costs only the path that still had cached totals.
+        // explicit stack, so very deep nesting can't overflow the call stack.
+    void invalidate(){
+        Deque<ProductBundle> stack = new ArrayDeque<>();
+        stack.push(this);
+
+        while(!stack.isEmpty()){
+            ProductBundle current = stack.pop();
+
+            if(!current.priceValid){
+                continue;
+            }
+
+            current.priceValid = false;
+
+            for(ProductBundle parent: current.parents){
+                stack.push(parent);
+            }
+        }
+    }
+
+    List<CartItem> children(){
+        return bundle;
+    }
+
+    boolean hasCachedPrice(){
+        return priceValid;
+    }
+
+    double cachedPrice(){
+        return cachedPrice;
+    }
+
+    void storePrice(double price){
+        cachedPrice = price;
+        priceValid = true;
     }
 
     @Override
     public double getprice(){
-        double totalPrice = 0.0;
-
-        for(CartItem item: bundle){
-            totalPrice += item.getprice();
+        if(priceValid){
+            return cachedPrice;
         }
 
-        return totalPrice;
+        return CartEvaluator.price(this);
     }
 
     @Override
     public void display(){
-        System.out.println("Product Bundle:" + this.bundleName);
-        
-        for(CartItem item: bundle){
-            item.display();
+        CartEvaluator.display(this);
+    }
+}
+
+// Evaluation engine for the cart graph(the same item can be in many bundles, so it is a DAG, not a tree):
+    // - explicit stack instead of recursion, so 100k levels of nesting don't overflow the call stack
+    // - shared bundles are evaluated once per pass(memo) and valid cached totals are reused
+    // - a bundle that contains itself(directly or not) is reported instead of looping forever
+class CartEvaluator{
+    private static class Frame{
+        final ProductBundle bundle;
+
+        int next;
+
+        double total;
+
+        Frame(ProductBundle bundle){
+            this.bundle = bundle;
+        }
+    }
+
+    public static double price(CartItem item){
+        if(!(item instanceof ProductBundle)){
+            return item.getprice();
+        }
+
+        Map<ProductBundle, Double> memo = new IdentityHashMap<>();
+        Set<ProductBundle> onPath = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Frame> stack = new ArrayDeque<>();
+
+        ProductBundle root = (ProductBundle)item;
+        onPath.add(root);
+        stack.push(new Frame(root));
+
+        // post-order: a bundle's total is known once all of its children are done
+        while(!stack.isEmpty()){
+            Frame frame = stack.peek();
+            List<CartItem> children = frame.bundle.children();
+
+            if(frame.next < children.size()){
+                CartItem child = children.get(frame.next++);
+
+                if(!(child instanceof ProductBundle)){
+                    frame.total += child.getprice();
+
+                    continue;
+                }
+
+                ProductBundle childBundle = (ProductBundle)child;
+                Double known = childBundle.hasCachedPrice() ? Double.valueOf(childBundle.cachedPrice()) : memo.get(childBundle);
+
+                if(known != null){
+                    frame.total += known;
+                } else if(!onPath.add(childBundle)){
+                    throw new IllegalStateException("cycle detected at bundle:" + childBundle.bundleName);
+                } else {
+                    stack.push(new Frame(childBundle));
+                }
+            } else {
+                stack.pop();
+                onPath.remove(frame.bundle);
+
+                memo.put(frame.bundle, frame.total);
+                frame.bundle.storePrice(frame.total);
+
+                if(!stack.isEmpty()){
+                    stack.peek().total += frame.total;
+                }
+            }
+        }
+
+        return memo.get(root);
+    }
+
+    // pre-order display, a bundle already shown in this pass is printed as a reference instead of again
+    public static void display(CartItem item){
+        Set<ProductBundle> shown = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<CartItem> stack = new ArrayDeque<>();
+        stack.push(item);
+
+        while(!stack.isEmpty()){
+            CartItem current = stack.pop();
+
+            if(!(current instanceof ProductBundle)){
+                current.display();
+
+                continue;
+            }
+
+            ProductBundle bundle = (ProductBundle)current;
+
+            if(!shown.add(bundle)){
+                System.out.println("Product Bundle:" + bundle.bundleName + " (shown above)");
+
+                continue;
+            }
+
+            System.out.println("Product Bundle:" + bundle.bundleName);
+
+            List<CartItem> children = bundle.children();
+
+            for(int i = children.size() - 1; i >= 0; i--){
+                stack.push(children.get(i));
+            }
+        }
+    }
+}
+
+
+// Compensated(Kahan-Babuska) addition: keeps the low order bits lost by each double addition,
+    // so totals of hundreds of thousands of prices don't drift.
+class CompensatedSum{
+    private double sum;
+
+    private double compensation;
+
+    public void add(double value){
+        double total = sum + value;
+
+        if(Math.abs(sum) >= Math.abs(value)){
+            compensation += (sum - total) + value;
+        } else {
+            compensation += (value - total) + sum;
+        }
+
+        sum = total;
+    }
+
+    public void add(CompensatedSum other){
+        add(other.sum);
+        add(other.compensation);
+    }
+
+    public double value(){
+        return sum + compensation;
+    }
+}
+
+// Fork/Join pricing for very large carts:
+    // item ranges larger than the threshold are split in halves and bundles larger than it get their own task,
+    // smaller bundles are summed sequentially(explicit stack), idle workers steal the pending halves.
+// it only reads the cart(bundle caches are single threaded and not touched), shared bundles are computed once per call.
+class ParallelCartPricer{
+    // bundles on the path to a forked task, to report cycles through large bundles
+    private static class Path{
+        final ProductBundle bundle;
+
+        final Path parent;
+
+        Path(ProductBundle bundle, Path parent){
+            this.bundle = bundle;
+            this.parent = parent;
+        }
+
+        boolean contains(ProductBundle candidate){
+            for(Path path = this; path != null; path = path.parent){
+                if(path.bundle == candidate){
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    private final int threshold;
+
+    public ParallelCartPricer(ForkJoinPool pool, int threshold){
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    public double price(List<CartItem> cart){
+        return pool.invoke(new RangeTask(cart, 0, cart.size(), null, new ConcurrentHashMap<>())).value();
+    }
+
+    // fork/join tasks are never serialized
+    @SuppressWarnings("serial")
+    private class RangeTask extends RecursiveTask<CompensatedSum>{
+        private final List<CartItem> items;
+        private final int from;
+        private final int to;
+        private final Path path;
+        private final ConcurrentHashMap<ProductBundle, Double> memo;
+
+        RangeTask(List<CartItem> items, int from, int to, Path path, ConcurrentHashMap<ProductBundle, Double> memo){
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.path = path;
+            this.memo = memo;
+        }
+
+        @Override
+        protected CompensatedSum compute(){
+            if(to - from > threshold){
+                int middle = (from + to) >>> 1;
+                RangeTask left = new RangeTask(items, from, middle, path, memo);
+
+                left.fork();
+
+                CompensatedSum sum = new RangeTask(items, middle, to, path, memo).compute();
+                sum.add(left.join());
+
+                return sum;
+            }
+
+            CompensatedSum sum = new CompensatedSum();
+            List<BundleTask> forked = new ArrayList<>();
+
+            for(int i = from; i < to; i++){
+                CartItem item = items.get(i);
+
+                if(!(item instanceof ProductBundle)){
+                    sum.add(item.getprice());
+
+                    continue;
+                }
+
+                ProductBundle bundle = (ProductBundle)item;
+                Double known = memo.get(bundle);
+
+                if(known != null){
+                    sum.add(known);
+                } else if(bundle.children().size() > threshold){
+                    if(path != null && path.contains(bundle)){
+                        throw new IllegalStateException("cycle detected at bundle:" + bundle.bundleName);
+                    }
+
+                    BundleTask task = new BundleTask(bundle, new Path(bundle, path), memo);
+
+                    task.fork();
+                    forked.add(task);
+                } else {
+                    sum.add(sequentialPrice(bundle, memo));
+                }
+            }
+
+            for(BundleTask task: forked){
+                sum.add(task.join());
+            }
+
+            return sum;
+        }
+    }
+
+    // fork/join tasks are never serialized
+    @SuppressWarnings("serial")
+    private class BundleTask extends RecursiveTask<Double>{
+        private final ProductBundle bundle;
+        private final Path path;
+        private final ConcurrentHashMap<ProductBundle, Double> memo;
+
+        BundleTask(ProductBundle bundle, Path path, ConcurrentHashMap<ProductBundle, Double> memo){
+            this.bundle = bundle;
+            this.path = path;
+            this.memo = memo;
+        }
+
+        @Override
+        protected Double compute(){
+            double total = new RangeTask(bundle.children(), 0, bundle.children().size(), path, memo).compute().value();
+
+            memo.put(bundle, total);
+
+            return total;
+        }
+    }
+
+    // post-order with an explicit stack(same walk as CartEvaluator) using compensated sums
+    private static double sequentialPrice(ProductBundle root, ConcurrentHashMap<ProductBundle, Double> memo){
+        Set<ProductBundle> onPath = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ProductBundle> bundles = new ArrayDeque<>();
+        Deque<int[]> positions = new ArrayDeque<>();
+        Deque<CompensatedSum> sums = new ArrayDeque<>();
+
+        onPath.add(root);
+        bundles.push(root);
+        positions.push(new int[1]);
+        sums.push(new CompensatedSum());
+
+        while(true){
+            ProductBundle bundle = bundles.peek();
+            int[] position = positions.peek();
+            CompensatedSum sum = sums.peek();
+
+            if(position[0] < bundle.children().size()){
+                CartItem child = bundle.children().get(position[0]++);
+
+                if(!(child instanceof ProductBundle)){
+                    sum.add(child.getprice());
+
+                    continue;
+                }
+
+                ProductBundle childBundle = (ProductBundle)child;
+                Double known = memo.get(childBundle);
+
+                if(known != null){
+                    sum.add(known);
+                } else if(!onPath.add(childBundle)){
+                    throw new IllegalStateException("cycle detected at bundle:" + childBundle.bundleName);
+                } else {
+                    bundles.push(childBundle);
+                    positions.push(new int[1]);
+                    sums.push(new CompensatedSum());
+                }
+            } else {
+                bundles.pop();
+                positions.pop();
+                sums.pop();
+                onPath.remove(bundle);
+
+                double total = sum.value();
+                memo.put(bundle, total);
+
+                if(bundles.isEmpty()){
+                    return total;
+                }
+
+                sums.peek().add(total);
+            }
         }
     }
 }
 
+// Columnar form of a cart: one row per distinct node(the cart is a DAG, a shared item is one row),
+    // kept in parallel arrays instead of objects. rows are stored children first and a bundle's items are a range
+    // of row indices(childOffsets/childRows, CSR style), so subtotals are one forward pass over the arrays.
+// convert back with toCartItems() for editing, shared items stay shared.
+class FlatCart{
+    private int size;
+
+    // price of a product row, 0 for bundle rows
+    private double[] prices = new double[16];
+
+    private int[] nameIds = new int[16];
+
+    private boolean[] bundles = new boolean[16];
+
+    // items of row i are childRows[childOffsets[i] .. childOffsets[i + 1]), in bundle order
+    private int[] childOffsets = new int[17];
+
+    private int[] childRows = new int[16];
+
+    private int childCount;
+
+    // rows of the top level cart items, in cart order
+    private int[] roots = new int[0];
+
+    private final List<String> names = new ArrayList<>();
+
+    public static FlatCart compile(List<CartItem> cart){
+        FlatCart flat = new FlatCart();
+        Map<String, Integer> dictionary = new HashMap<>();
+        Map<CartItem, Integer> rows = new IdentityHashMap<>();
+
+        flat.roots = new int[cart.size()];
+
+        for(int i = 0; i < cart.size(); i++){
+            flat.roots[i] = flat.intern(cart.get(i), rows, dictionary);
+        }
+
+        return flat;
+    }
+
+    // row of the item, adding it and everything below it that has no row yet(iterative post-order, cycles rejected)
+    private int intern(CartItem item, Map<CartItem, Integer> rows, Map<String, Integer> dictionary){
+        Integer existing = rows.get(item);
+
+        if(existing != null){
+            return existing;
+        }
+
+        if(!(item instanceof ProductBundle)){
+            return addProduct(item, rows, dictionary);
+        }
+
+        Set<ProductBundle> onPath = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ProductBundle> path = new ArrayDeque<>();
+        Deque<Integer> positions = new ArrayDeque<>();
+
+        onPath.add((ProductBundle)item);
+        path.push((ProductBundle)item);
+        positions.push(0);
+
+        while(!path.isEmpty()){
+            ProductBundle bundle = path.peek();
+            List<CartItem> children = bundle.children();
+            int position = positions.pop();
+
+            if(position < children.size()){
+                positions.push(position + 1);
+
+                CartItem child = children.get(position);
+
+                if(rows.containsKey(child)){
+                    continue;
+                }
+
+                if(!(child instanceof ProductBundle)){
+                    addProduct(child, rows, dictionary);
+
+                    continue;
+                }
+
+                if(!onPath.add((ProductBundle)child)){
+                    throw new IllegalStateException("cycle detected at bundle:" + ((ProductBundle)child).bundleName);
+                }
+
+                path.push((ProductBundle)child);
+                positions.push(0);
+
+                continue;
+            }
+
+            // every item of the bundle has a row now
+            path.pop();
+            onPath.remove(bundle);
+
+            for(CartItem child: children){
+                addChild(rows.get(child));
+            }
+
+            rows.put(bundle, addRow(0, dictionary.computeIfAbsent(bundle.bundleName, this::addName), true));
+        }
+
+        return rows.get(item);
+    }
+
+    private int addProduct(CartItem item, Map<CartItem, Integer> rows, Map<String, Integer> dictionary){
+        if(!(item instanceof Product)){
+            throw new IllegalArgumentException("only products and product bundles can be flattened");
+        }
+
+        Product product = (Product)item;
+        int row = addRow(product.getprice(), dictionary.computeIfAbsent(product.getName(), this::addName), false);
+
+        rows.put(product, row);
+
+        return row;
+    }
+
+    private int addName(String name){
+        names.add(name);
+
+        return names.size() - 1;
+    }
+
+    private void addChild(int row){
+        if(childCount == childRows.length){
+            childRows = Arrays.copyOf(childRows, childCount * 2);
+        }
+
+        childRows[childCount++] = row;
+    }
+
+    // the row's items are the children added since the previous row
+    private int addRow(double price, int nameId, boolean bundle){
+        if(size == prices.length){
+            prices = Arrays.copyOf(prices, size * 2);
+            nameIds = Arrays.copyOf(nameIds, size * 2);
+            bundles = Arrays.copyOf(bundles, size * 2);
+            childOffsets = Arrays.copyOf(childOffsets, size * 2 + 1);
+        }
+
+        prices[size] = price;
+        nameIds[size] = nameId;
+        bundles[size] = bundle;
+        childOffsets[size + 1] = childCount;
+
+        return size++;
+    }
+
+    // distinct nodes of the cart
+    public int size(){
+        return size;
+    }
+
+    // same as summing the top level items of the cart, shared items count once per occurrence
+    public double total(){
+        double[] subtotals = subtotals();
+        double total = 0.0;
+
+        for(int root: roots){
+            total += subtotals[root];
+        }
+
+        return total;
+    }
+
+    // subtotal of every row(its own price for products), children come before their parent,
+        // so one forward pass has every item's subtotal ready when its bundle is reached.
+    public double[] subtotals(){
+        double[] subtotals = Arrays.copyOf(prices, size);
+
+        for(int i = 0; i < size; i++){
+            for(int j = childOffsets[i]; j < childOffsets[i + 1]; j++){
+                subtotals[i] += subtotals[childRows[j]];
+            }
+        }
+
+        return subtotals;
+    }
+
+    // same output as displaying the object cart, shared items are printed wherever they occur
+    public void display(){
+        Deque<Integer> stack = new ArrayDeque<>();
+
+        for(int i = roots.length - 1; i >= 0; i--){
+            stack.push(roots[i]);
+        }
+
+        while(!stack.isEmpty()){
+            int row = stack.pop();
+
+            if(bundles[row]){
+                System.out.println("Product Bundle:" + names.get(nameIds[row]));
+
+                for(int j = childOffsets[row + 1] - 1; j >= childOffsets[row]; j--){
+                    stack.push(childRows[j]);
+                }
+            } else {
+                System.out.println("Product:" + names.get(nameIds[row]) + " price:" + prices[row]);
+            }
+        }
+    }
+
+    // rebuilds the object graph, one object per row so shared items are shared again
+    public List<CartItem> toCartItems(){
+        CartItem[] items = new CartItem[size];
+
+        for(int i = 0; i < size; i++){
+            String name = names.get(nameIds[i]);
+
+            if(bundles[i]){
+                ProductBundle bundle = new ProductBundle(name);
+
+                for(int j = childOffsets[i]; j < childOffsets[i + 1]; j++){
+                    bundle.addProduct(items[childRows[j]]);
+                }
+
+                items[i] = bundle;
+            } else {
+                items[i] = new Product(name, prices[i]);
+            }
+        }
+
+        List<CartItem> cart = new ArrayList<>(roots.length);
+
+        for(int root: roots){
+            cart.add(items[root]);
+        }
+
+        return cart;
+    }
+}
 
 public class Composite{
     public static void main(String[] args) {
@@ -215,5 +837,108 @@ public class Composite{
         }
 
         System.out.println("Total Price:"+totalCartPrice);
+
+        // only appleKit and appleEducationKit are recomputed, schoolKit keeps its cached total
+        airpods.setPrice(250);
+
+        System.out.println("Apple Education Kit Price:"+appleEducationKit.getprice());
+
+        // 100k levels of nesting are evaluated without recursion
+        ProductBundle deepBundle = new ProductBundle("Level 0");
+        deepBundle.addProduct(book);
+
+        for(int level = 1; level < 100_000; level++){
+            ProductBundle parent = new ProductBundle("Level " + level);
+            parent.addProduct(deepBundle);
+            parent.addProduct(book);
+
+            deepBundle = parent;
+        }
+
+        System.out.println("Deep Bundle Price:"+deepBundle.getprice());
+
+        // a bundle nested into itself is reported instead of overflowing the stack
+        ProductBundle loopKit = new ProductBundle("Loop Kit");
+        ProductBundle innerLoopKit = new ProductBundle("Inner Loop Kit");
+        loopKit.addProduct(innerLoopKit);
+        innerLoopKit.addProduct(loopKit);
+
+        try{
+            loopKit.getprice();
+        } catch(IllegalStateException ex){
+            System.out.println(ex.getMessage());
+        }
+
+        // large carts: bundles and item ranges above the threshold are priced in parallel
+        System.out.println("Parallel Total Price:"+new ParallelCartPricer(ForkJoinPool.commonPool(), 2).price(cart));
+
+        // flat columnar cart: totals and display as array loops, converted back to objects for editing
+        FlatCart flatCart = FlatCart.compile(cart);
+
+        flatCart.display();
+        System.out.println("Flat Total Price:"+flatCart.total()+" rows:"+flatCart.size());
+
+        List<CartItem> editableCart = flatCart.toCartItems();
+        System.out.println("Rebuilt Cart Items:"+editableCart.size());
+    }
+}
+
+// Parallel fork/join pricing against the plain recursive walk:
+    // java CartPricingBenchmark [bundles] [productsPerBundle] [threshold]
+class CartPricingBenchmark{
+    public static void main(String[] args) {
+        int bundles = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int productsPerBundle = args.length > 1 ? Integer.parseInt(args[1]) : 2500;
+        int threshold = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        List<CartItem> cart = new ArrayList<>();
+        Random random = new Random(42);
+
+        for(int b = 0; b < bundles; b++){
+            ProductBundle bundle = new ProductBundle("Bundle " + b);
+
+            for(int p = 0; p < productsPerBundle; p++){
+                // mix of large and tiny prices, where naive double sums lose precision
+                bundle.addProduct(new Product("Product " + p, p % 100 == 0 ? 1e9 + random.nextDouble() : random.nextDouble() / 100));
+            }
+
+            cart.add(bundle);
+        }
+
+        ParallelCartPricer pricer = new ParallelCartPricer(ForkJoinPool.commonPool(), threshold);
+
+        for(int round = 0; round < 5; round++){
+            long start = System.nanoTime();
+            double recursiveTotal = 0;
+
+            for(CartItem item: cart){
+                recursiveTotal += recursivePrice(item);
+            }
+
+            long recursiveNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            double parallelTotal = pricer.price(cart);
+            long parallelNanos = System.nanoTime() - start;
+
+            System.out.println("items:" + bundles * (productsPerBundle + 1)
+                + " recursive(ms):" + recursiveNanos / 1_000_000 + " total:" + recursiveTotal
+                + " fork/join(ms):" + parallelNanos / 1_000_000 + " total:" + parallelTotal);
+        }
     }
-}
\ No newline at end of file
+
+    // the original recursive getprice, without caches
+    private static double recursivePrice(CartItem item){
+        if(!(item instanceof ProductBundle)){
+            return item.getprice();
+        }
+
+        double totalPrice = 0.0;
+
+        for(CartItem child: ((ProductBundle)item).children()){
+            totalPrice += recursivePrice(child);
+        }
+
+        return totalPrice;
+    }
+}
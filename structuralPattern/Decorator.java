@@ -30,7 +30,11 @@ Real world examples:
 
 // component interface 
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 interface Pizza{
     double getCost();
@@ -78,58 +82,251 @@ abstract class PizzaDecorator implements Pizza{
 
 // Concrete Decorator extending Abstract Decorator with constructor to initialize basetype
 class ExtraCheese extends PizzaDecorator{
+    // price and description come from the default catalog, the single source for built-in toppings
+    private static final int ID = ToppingCatalog.DEFAULT.idOf("cheese");
+
     public ExtraCheese(Pizza pizzaType) {
         super(pizzaType);
     }
     
     @Override
     public double getCost() {
-        return pizza.getCost() + 20.0;
+        return pizza.getCost() + ToppingCatalog.DEFAULT.price(ID);
     }
     
     @Override
     public String getDescription() {
-        return pizza.getDescription() + " with cheese";
+        return pizza.getDescription() + ToppingCatalog.DEFAULT.description(ID);
     }
     
 }
 
 // Concrete Decorator extending Abstract Decorator with constructor to initialize basetype
 class Olives extends PizzaDecorator{
+    private static final int ID = ToppingCatalog.DEFAULT.idOf("olives");
+
     public Olives(Pizza type) {
         super(type);
     }
     
     @Override
     public double getCost() {
-        return pizza.getCost() + 9.99;
+        return pizza.getCost() + ToppingCatalog.DEFAULT.price(ID);
     }
     
     @Override
     public String getDescription() {
-        return pizza.getDescription() + " with olives";
+        return pizza.getDescription() + ToppingCatalog.DEFAULT.description(ID);
     }
 }
 
 // Concrete Decorator extending Abstract Decorator with constructor to initialize basetype
 class StuffedCrust extends PizzaDecorator{
+    private static final int ID = ToppingCatalog.DEFAULT.idOf("stuffedCrust");
+
     public StuffedCrust(Pizza type){
         super(type);
     }
 
     @Override
     public double getCost() {
-        return pizza.getCost() + 10.0;
+        return pizza.getCost() + ToppingCatalog.DEFAULT.price(ID);
+    }
+
+    @Override
+    public String getDescription() {
+       return pizza.getDescription() + ToppingCatalog.DEFAULT.description(ID);
+    }
+
+}
+
+// Topping catalog loaded from a file, one topping per line: name,price,description suffix
+    // (e.g. "cheese,20.0, with cheese", lines starting with # are ignored).
+    // toppings get dense ids in file order, so prices and descriptions are plain array lookups.
+class ToppingCatalog{
+    // built-in toppings, shared and never modified
+    static final ToppingCatalog DEFAULT = defaults();
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private final List<String> names = new ArrayList<>();
+
+    private double[] prices = new double[8];
+
+    private String[] descriptions = new String[8];
+
+    // built-in toppings, the ExtraCheese, Olives and StuffedCrust decorators read their prices from DEFAULT
+    public static ToppingCatalog defaults(){
+        ToppingCatalog catalog = new ToppingCatalog();
+        catalog.add("cheese", 20.0, " with cheese");
+        catalog.add("olives", 9.99, " with olives");
+        catalog.add("stuffedCrust", 10.0, " with stuffed crust");
+
+        return catalog;
+    }
+
+    public static ToppingCatalog load(Path file) throws IOException{
+        ToppingCatalog catalog = new ToppingCatalog();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+        for(int i = 0; i < lines.size(); i++){
+            String line = lines.get(i);
+
+            if(line.isBlank() || line.startsWith("#")){
+                continue;
+            }
+
+            String[] fields = line.split(",", 3);
+
+            if(fields.length != 3){
+                throw new IllegalArgumentException("invalid topping at line " + (i + 1) + ":" + line);
+            }
+
+            try{
+                catalog.add(fields[0].strip(), Double.parseDouble(fields[1].strip()), fields[2]);
+            } catch(NumberFormatException ex){
+                throw new IllegalArgumentException("invalid topping price at line " + (i + 1) + ":" + line);
+            }
+        }
+
+        return catalog;
+    }
+
+    private void add(String name, double price, String description){
+        if(ids.containsKey(name)){
+            throw new IllegalArgumentException("duplicate topping:" + name);
+        }
+
+        int id = names.size();
+
+        if(id == prices.length){
+            prices = Arrays.copyOf(prices, id * 2);
+            descriptions = Arrays.copyOf(descriptions, id * 2);
+        }
+
+        ids.put(name, id);
+        names.add(name);
+        prices[id] = price;
+        descriptions[id] = description;
+    }
+
+    // -1 for toppings that are not in the catalog
+    public int idOf(String name){
+        Integer id = ids.get(name);
+
+        return id == null ? -1 : id;
+    }
+
+    public double price(int id){
+        return prices[id];
+    }
+
+    public String description(int id){
+        return descriptions[id];
+    }
+}
+
+// Unknown toppings found while building or pricing orders(instead of skipping them silently).
+class UnknownToppingReport{
+    private final List<String> unknown = new ArrayList<>();
+
+    void add(int orderIndex, String topping){
+        unknown.add("order:" + orderIndex + " topping:" + topping);
+    }
+
+    // topping of a single pizza, not part of a batch of orders
+    void add(String topping){
+        unknown.add("topping:" + topping);
+    }
+
+    public boolean isEmpty(){
+        return unknown.isEmpty();
+    }
+
+    public List<String> entries(){
+        return Collections.unmodifiableList(unknown);
+    }
+
+    @Override
+    public String toString(){
+        return "unknown toppings:" + unknown;
+    }
+}
+
+// Concrete Decorator whose price and description come from the catalog
+class CatalogTopping extends PizzaDecorator{
+    private final ToppingCatalog catalog;
+
+    private final int id;
+
+    public CatalogTopping(Pizza type, ToppingCatalog catalog, int id){
+        super(type);
+        this.catalog = catalog;
+        this.id = id;
+    }
+
+    @Override
+    public double getCost() {
+        return pizza.getCost() + catalog.price(id);
     }
 
     @Override
     public String getDescription() {
-       return pizza.getDescription() + " with stuffed crust";
+        return pizza.getDescription() + catalog.description(id);
+    }
+}
+
+class PizzaOrder{
+    final String baseType;
+
+    final List<String> toppings;
+
+    public PizzaOrder(String baseType, List<String> toppings){
+        this.baseType = baseType;
+        this.toppings = toppings;
+    }
+}
+
+// Fused decorator chain: cost and description are computed once from the chain and kept,
+    // so pricing a pizza is a field read instead of a walk through every topping and a new String per level.
+class FusedPizza implements Pizza{
+    private final double cost;
+
+    private final String description;
+
+    private FusedPizza(double cost, String description){
+        this.cost = cost;
+        this.description = description;
+    }
+
+    // collapses any decorator chain into one node, other pizzas are already a single node and returned as they are.
+        // values come from the chain itself, so the results are identical to the unfused pizza.
+    public static Pizza fuse(Pizza pizza){
+        if(!(pizza instanceof PizzaDecorator)){
+            return pizza;
+        }
+
+        return new FusedPizza(pizza.getCost(), pizza.getDescription());
     }
 
+    @Override
+    public double getCost() {
+        return cost;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
 }
 
 class PizzaFactory{
+    // fused pizzas per menu item(base + known toppings in order), menus repeat the same combinations.
+        // bounded, combinations beyond it are fused on every call instead of cached.
+    private static final int MAX_FUSED_MENU_ITEMS = 1024;
+
+    private static final Map<String, Pizza> fusedMenu = new ConcurrentHashMap<>();
+
     private static Pizza createBasePizza(String type){
         if(type.equalsIgnoreCase("Plain")){
             return new PlainPizza();
@@ -158,6 +355,81 @@ class PizzaFactory{
 
         return base;
     }
+
+    // catalog driven decorators, unknown toppings are skipped and reported
+    public static Pizza createPizza(String type, List<String> toppings, ToppingCatalog catalog, UnknownToppingReport report){
+        Pizza base = createBasePizza(type);
+
+        for(String topping: toppings){
+            int id = catalog.idOf(topping);
+
+            if(id < 0){
+                report.add(topping);
+            } else {
+                base = new CatalogTopping(base, catalog, id);
+            }
+        }
+
+        return base;
+    }
+
+    // Bulk pricing straight from the price table, no decorator objects are created.
+        // amounts are added in topping order like the decorator chain, so the prices are the same.
+    public static double[] priceOrders(List<PizzaOrder> orders, ToppingCatalog catalog, UnknownToppingReport report){
+        double plainCost = new PlainPizza().getCost();
+        double margheritaCost = new MargheritaPizza().getCost();
+        double[] prices = new double[orders.size()];
+
+        for(int i = 0; i < prices.length; i++){
+            PizzaOrder order = orders.get(i);
+            double cost = order.baseType.equalsIgnoreCase("Plain") ? plainCost : margheritaCost;
+
+            for(String topping: order.toppings){
+                int id = catalog.idOf(topping);
+
+                if(id < 0){
+                    report.add(i, topping);
+                } else {
+                    cost += catalog.price(id);
+                }
+            }
+
+            prices[i] = cost;
+        }
+
+        return prices;
+    }
+
+    public static Pizza createFusedPizza(String type, List<String> toppings){
+        String key = menuKey(type, toppings);
+        Pizza fused = fusedMenu.get(key);
+
+        if(fused == null){
+            fused = FusedPizza.fuse(createPizza(type, toppings));
+
+            if(fusedMenu.size() < MAX_FUSED_MENU_ITEMS){
+                fusedMenu.putIfAbsent(key, fused);
+            }
+        }
+
+        return fused;
+    }
+
+    // normalized key: the base createBasePizza resolves to and catalog ids of the known toppings,
+        // unknown toppings are skipped by createPizza, so they never make a new menu item.
+    private static String menuKey(String type, List<String> toppings){
+        StringBuilder key = new StringBuilder(type.equalsIgnoreCase("Plain") ? "plain" : "margherita");
+
+        for(String topping: toppings){
+            int id = ToppingCatalog.DEFAULT.idOf(topping);
+
+            if(id >= 0){
+                key.append(':').append(id);
+            }
+        }
+
+        return key.toString();
+    }
 }
 
 public class Decorator {
@@ -177,5 +449,20 @@ public class Decorator {
         Pizza pizzaOrder2 = PizzaFactory.createPizza("margherita", List.of("olives", "cheese", "stuffedCrust"));
         
         System.out.println(pizzaOrder2.getDescription()+ " cost:"+ pizzaOrder2.getCost());
+
+        // same result from a single precomputed node
+        Pizza fusedOrder2 = PizzaFactory.createFusedPizza("margherita", List.of("olives", "cheese", "stuffedCrust"));
+        
+        System.out.println(fusedOrder2.getDescription()+ " cost:"+ fusedOrder2.getCost());
+
+        // price a batch of orders from the catalog without building pizzas, unknown toppings are reported
+        ToppingCatalog catalog = ToppingCatalog.defaults();
+        UnknownToppingReport report = new UnknownToppingReport();
+
+        double[] prices = PizzaFactory.priceOrders(List.of(
+            new PizzaOrder("plain", List.of("olives", "cheese")),
+            new PizzaOrder("margherita", List.of("olives", "pineapple", "stuffedCrust"))), catalog, report);
+
+        System.out.println(Arrays.toString(prices) + " " + report);
     }
 }
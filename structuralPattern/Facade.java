@@ -14,28 +14,235 @@ Cons:
     - fragile coupling(deals with multiple subsystems, when one subsystem fails, there should be an option to revert the previous actions performed)
 */
 
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
 class PaymentService{
+    // idempotency keys of the refunds and voids already done, stands in for the provider's own key store:
+        // one key per booking attempt(saga id), so a repeated compensation of the same attempt is a no-op
+        // while a retried booking with the same booking id is compensated again.
+    private final Set<String> compensated = ConcurrentHashMap.newKeySet();
+
     public void makePayment(String bookingId, double amount){
         System.out.println("Making payment for "+bookingId+" with amount:"+amount);
     }
+
+    // two phase payment: hold the amount first, charge it once the seat is secured
+    public void authorizePayment(String bookingId, double amount){
+        System.out.println("Authorized payment for "+bookingId+" with amount:"+amount);
+    }
+
+    public void capturePayment(String bookingId, double amount){
+        System.out.println("Captured payment for "+bookingId+" with amount:"+amount);
+    }
+
+    // releases the hold of an authorization that was never captured
+    public void voidAuthorization(String bookingId, double amount, String idempotencyKey){
+        if(compensated.add(idempotencyKey)){
+            System.out.println("Voided authorization for "+bookingId+" with amount:"+amount);
+        }
+    }
+
+    // refunds at most once per idempotency key; may be asked for a charge that never ran(a step that was only
+        // started), the provider then has nothing to refund for the booking
+    public void refundPayment(String bookingId, double amount, String idempotencyKey){
+        if(compensated.add(idempotencyKey)){
+            System.out.println("Refunded payment for "+bookingId+" with amount:"+amount);
+        }
+    }
 }
 
 class SeatReservationService{
+    private final Set<String> released = ConcurrentHashMap.newKeySet();
+
     public void reserveSeat(String movieId, String seatNumber){
         System.out.println("Reserved the seat:"+seatNumber+" for the movie:"+movieId);
     }
+
+    // releases only the hold of that booking, at most once per idempotency key(one per booking attempt)
+    public void releaseSeat(String bookingId, String movieId, String seatNumber, String idempotencyKey){
+        if(released.add(idempotencyKey)){
+            System.out.println("Released the seat:"+seatNumber+" for the movie:"+movieId);
+        }
+    }
 }
 
 class NotificationService{
     public void sendBookingConfirmation(String userEmail){
         System.out.println("Sending booking confirmation for the user:"+userEmail);
     }
+
+    // templating part of the confirmation, doesn't depend on the other steps
+    public String prepareConfirmation(String userEmail){
+        return "Sending booking confirmation for the user:"+userEmail;
+    }
+
+    public void send(String preparedConfirmation){
+        System.out.println(preparedConfirmation);
+    }
 }
 
 class TicketService{
+    private final Set<String> cancelled = ConcurrentHashMap.newKeySet();
+
     public void generateTicket(String movieId, String seatNumber){
         System.out.println("Generating ticket for the movie:"+movieId+" seat:"+seatNumber);
     }
+
+    // rendering part of the ticket, needs the reserved seat but not the payment
+    public String renderTicket(String movieId, String seatNumber){
+        return "Ticket for the movie:"+movieId+" seat:"+seatNumber;
+    }
+
+    public void issueTicket(String renderedTicket){
+        System.out.println("Generating ticket: "+renderedTicket);
+    }
+
+    // a repeated cancel with the same idempotency key(one per booking attempt) is a no-op
+    public void cancelTicket(String bookingId, String movieId, String seatNumber, String idempotencyKey){
+        if(cancelled.add(idempotencyKey)){
+            System.out.println("Cancelled ticket for the movie:"+movieId+" seat:"+seatNumber);
+        }
+    }
+}
+
+// latency of every step of an orchestrated booking
+class BookingReport{
+    public final String bookingID;
+
+    public final Map<String, Long> stepNanos;
+
+    public final long totalNanos;
+
+    public BookingReport(String bookingID, Map<String, Long> stepNanos, long totalNanos){
+        this.bookingID = bookingID;
+        this.stepNanos = stepNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder steps = new StringBuilder();
+
+        stepNanos.forEach((step, nanos) -> steps.append(' ').append(step).append("(us):").append(nanos / 1000));
+
+        return "booking:"+bookingID+" total(us):"+totalNanos / 1000+steps;
+    }
+}
+
+// Runs the independent booking steps concurrently on virtual threads:
+    //   authorize payment, reserve seat, prepare notification       -> start together
+    //   capture payment                 after authorize and reserve(no charge without a seat)
+    //   render ticket                   after reserve(overlaps with capture)
+    //   issue ticket                    after capture and render
+    //   send notification               after issue ticket and prepare notification
+// when a step fails, the steps that went through are undone once every step in flight has settled
+    // (ticket cancelled, capture refunded or authorization voided, seat released). the undo is best effort
+    // and in memory only, a crash in between leaks it; the saga mode(bookMovieTicketWithSaga) logs it durably.
+class BookingOrchestrator{
+    private static final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final PaymentService paymentService;
+    private final SeatReservationService seatReservationService;
+    private final TicketService ticketService;
+    private final NotificationService notificationService;
+
+    public BookingOrchestrator(PaymentService paymentService, SeatReservationService seatReservationService, TicketService ticketService, NotificationService notificationService){
+        this.paymentService = paymentService;
+        this.seatReservationService = seatReservationService;
+        this.ticketService = ticketService;
+        this.notificationService = notificationService;
+    }
+
+    public CompletableFuture<BookingReport> book(Booking booking){
+        Map<String, Long> stepNanos = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+        // idempotency key of this attempt's compensations, a retry of the booking gets a new one
+        String attemptId = UUID.randomUUID().toString();
+
+        CompletableFuture<Void> authorized = run("authorizePayment", stepNanos, () -> paymentService.authorizePayment(booking.bookingID, booking.amount));
+        CompletableFuture<Void> reserved = run("reserveSeat", stepNanos, () -> seatReservationService.reserveSeat(booking.movieID, booking.seatNumber));
+        CompletableFuture<String> confirmation = supply("prepareConfirmation", stepNanos, () -> notificationService.prepareConfirmation(booking.userEmail));
+
+        CompletableFuture<Void> captured = authorized.thenCombine(reserved, (a, r) -> null)
+            .thenCompose(ignored -> run("capturePayment", stepNanos, () -> paymentService.capturePayment(booking.bookingID, booking.amount)));
+
+        CompletableFuture<String> renderedTicket = reserved
+            .thenCompose(ignored -> supply("renderTicket", stepNanos, () -> ticketService.renderTicket(booking.movieID, booking.seatNumber)));
+
+        CompletableFuture<Void> issued = captured.thenCombine(renderedTicket, (c, ticket) -> ticket)
+            .thenCompose(ticket -> run("issueTicket", stepNanos, () -> ticketService.issueTicket(ticket)));
+
+        CompletableFuture<BookingReport> booked = issued.thenCombine(confirmation, (i, message) -> message)
+            .thenCompose(message -> run("sendConfirmation", stepNanos, () -> notificationService.send(message)))
+            .thenApply(ignored -> new BookingReport(booking.bookingID, new TreeMap<>(stepNanos), System.nanoTime() - start));
+
+        return booked.exceptionallyCompose(failure -> CompletableFuture.allOf(authorized, reserved, confirmation, captured, renderedTicket, issued)
+            .handle((ignored, settled) -> {
+                compensate(booking, attemptId, failure, authorized, reserved, captured, issued);
+
+                throw failure instanceof CompletionException ? (CompletionException)failure : new CompletionException(failure);
+            }));
+    }
+
+    private void compensate(Booking booking, String attemptId, Throwable failure, CompletableFuture<?> authorized, CompletableFuture<?> reserved,
+            CompletableFuture<?> captured, CompletableFuture<?> issued){
+        if(succeeded(issued)){
+            undo(failure, () -> ticketService.cancelTicket(booking.bookingID, booking.movieID, booking.seatNumber, attemptId));
+        }
+
+        if(succeeded(captured)){
+            undo(failure, () -> paymentService.refundPayment(booking.bookingID, booking.amount, attemptId));
+        } else if(succeeded(authorized)){
+            undo(failure, () -> paymentService.voidAuthorization(booking.bookingID, booking.amount, attemptId));
+        }
+
+        if(succeeded(reserved)){
+            undo(failure, () -> seatReservationService.releaseSeat(booking.bookingID, booking.movieID, booking.seatNumber, attemptId));
+        }
+    }
+
+    // a failed undo does not stop the others, it is attached to the booking failure
+    private static void undo(Throwable failure, Runnable compensation){
+        try{
+            compensation.run();
+        } catch(RuntimeException ex){
+            failure.addSuppressed(ex);
+        }
+    }
+
+    private static boolean succeeded(CompletableFuture<?> step){
+        return step.isDone() && !step.isCompletedExceptionally();
+    }
+
+    private CompletableFuture<Void> run(String step, Map<String, Long> stepNanos, Runnable action){
+        return supply(step, stepNanos, () -> {
+            action.run();
+
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> supply(String step, Map<String, Long> stepNanos, Supplier<T> action){
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+
+            try{
+                return action.get();
+            } finally {
+                stepNanos.put(step, System.nanoTime() - start);
+            }
+        }, executor);
+    }
 }
 
 // Facade Class
@@ -44,6 +251,7 @@ class MovieFacade{
     private NotificationService notificationService;
     private TicketService ticketService;
     private SeatReservationService seatReservationService;
+    private BookingOrchestrator bookingOrchestrator;
 
     public MovieFacade(){
         // can be done using dependency injection instead of object creation in constructor.
@@ -51,6 +259,7 @@ class MovieFacade{
         this.seatReservationService = new SeatReservationService();
         this.notificationService = new NotificationService();
         this.ticketService = new TicketService();
+        this.bookingOrchestrator = new BookingOrchestrator(paymentService, seatReservationService, ticketService, notificationService);
     }
 
     // we can use "builder pattern" as there are multiple parameters
@@ -60,9 +269,22 @@ class MovieFacade{
         ticketService.generateTicket(movieId, seatNumber);
         notificationService.sendBookingConfirmation(userEmail);
     }
+
+    // orchestrated mode: independent steps run concurrently, completes with per step latency
+    public CompletableFuture<BookingReport> bookMovieTicketAsync(String bookingId, double amount, String movieId, String seatNumber, String userEmail){
+        return bookingOrchestrator.book(new Booking.Builder()
+            .withBookingID(bookingId)
+            .withAmount(amount)
+            .withMovieID(movieId)
+            .withSeatNumber(seatNumber)
+            .withUserEmail(userEmail)
+            .build());
+    }
 }
 
-class Booking{
+class Booking implements Serializable{
+    private static final long serialVersionUID = 1L;
+
     public final String bookingID;
     public final double amount;
     public final String movieID;
@@ -77,6 +299,11 @@ class Booking{
         this.amount = obj.amount;
     }
 
+    @Override
+    public String toString(){
+        return "booking:"+bookingID+" amount:"+amount+" movie:"+movieID+" seat:"+seatNumber+" user:"+userEmail;
+    }
+
     public static class Builder{
         private String bookingID;
         private double amount;
@@ -121,12 +348,535 @@ class Booking{
 }
 
 
+// Schema of the binary booking record: string fields in wire order.
+    // new fields are only ever appended without a version bump, older readers skip them by fieldCount and newer
+    // readers see null for missing ones; the version changes only when the layout itself changes incompatibly.
+enum BookingField{
+    BOOKING_ID, MOVIE_ID, SEAT_NUMBER, USER_EMAIL;
+
+    static final BookingField[] VALUES = values();
+}
+
+// Versioned binary format of a booking(big endian):
+    // short magic 'BK', byte version, byte fieldCount, double amount,
+    // null bitmap(one bit per field, ceil(fieldCount / 8) bytes),
+    // short end offset of each string field(relative to the start of the string data), UTF-8 string data
+class BookingCodec{
+    static final short MAGIC = 0x424B;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 12;
+
+    // largest record this writer produces
+    static final int MAX_SIZE = HEADER_SIZE + nullBitmapSize(BookingField.VALUES.length) + 2 * BookingField.VALUES.length + 0xFFFF;
+
+    // record is validated completely before the first byte is written, a failed encode leaves the buffer untouched
+    public static void encode(Booking booking, ByteBuffer out){
+        int fieldCount = BookingField.VALUES.length;
+        byte[][] fields = new byte[fieldCount][];
+        byte[] nulls = new byte[nullBitmapSize(fieldCount)];
+        int dataSize = 0;
+
+        for(BookingField field: BookingField.VALUES){
+            String value = valueOf(booking, field);
+
+            if(value == null){
+                nulls[field.ordinal() >> 3] |= (byte)(1 << (field.ordinal() & 7));
+                fields[field.ordinal()] = new byte[0];
+            } else {
+                fields[field.ordinal()] = value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            dataSize += fields[field.ordinal()].length;
+        }
+
+        if(dataSize > 0xFFFF){
+            throw new IllegalArgumentException("booking is too large to encode");
+        }
+
+        if(out.remaining() < HEADER_SIZE + nulls.length + 2 * fieldCount + dataSize){
+            throw new BufferOverflowException();
+        }
+
+        out.putShort(MAGIC).put(VERSION).put((byte)fieldCount).putDouble(booking.amount).put(nulls);
+
+        int end = 0;
+
+        for(byte[] field: fields){
+            end += field.length;
+            out.putShort((short)end);
+        }
+
+        for(byte[] field: fields){
+            out.put(field);
+        }
+    }
+
+    static int nullBitmapSize(int fieldCount){
+        return (fieldCount + 7) >> 3;
+    }
+
+    // relative read, advances the buffer past the record
+    public static Booking decode(ByteBuffer in){
+        BookingView view = new BookingView(in, in.position());
+
+        Booking booking = new Booking.Builder()
+            .withBookingID(view.string(BookingField.BOOKING_ID))
+            .withAmount(view.amount())
+            .withMovieID(view.string(BookingField.MOVIE_ID))
+            .withSeatNumber(view.string(BookingField.SEAT_NUMBER))
+            .withUserEmail(view.string(BookingField.USER_EMAIL))
+            .build();
+
+        // advanced only once the record was read, a rejected record consumes nothing
+        in.position(in.position() + view.size());
+
+        return booking;
+    }
+
+    private static String valueOf(Booking booking, BookingField field){
+        switch(field){
+            case BOOKING_ID: return booking.bookingID;
+            case MOVIE_ID: return booking.movieID;
+            case SEAT_NUMBER: return booking.seatNumber;
+            default: return booking.userEmail;
+        }
+    }
+}
+
+// Zero-copy reader over an encoded booking: fields are read in place from the buffer when asked for.
+class BookingView{
+    private final ByteBuffer buffer;
+
+    private final int offset;
+
+    private final int fieldCount;
+
+    private final int nullBitmapSize;
+
+    public BookingView(ByteBuffer buffer, int offset){
+        if(buffer.getShort(offset) != BookingCodec.MAGIC){
+            throw new IllegalArgumentException("not a booking record at:" + offset);
+        }
+
+        if(buffer.get(offset + 2) != BookingCodec.VERSION){
+            throw new IllegalArgumentException("unsupported booking version:" + buffer.get(offset + 2));
+        }
+
+        this.buffer = buffer;
+        this.offset = offset;
+        this.fieldCount = Byte.toUnsignedInt(buffer.get(offset + 3));
+        this.nullBitmapSize = BookingCodec.nullBitmapSize(fieldCount);
+    }
+
+    public double amount(){
+        return buffer.getDouble(offset + 4);
+    }
+
+    // slice of the UTF-8 bytes of the field, shares the underlying buffer; null if the field is null or the record predates it
+    public ByteBuffer bytes(BookingField field){
+        if(isNull(field)){
+            return null;
+        }
+
+        int start = start(field.ordinal());
+
+        return buffer.slice(start, dataStart() + end(field.ordinal()) - start);
+    }
+
+    // decodes only the requested field
+    public String string(BookingField field){
+        if(isNull(field)){
+            return null;
+        }
+
+        int start = start(field.ordinal());
+        byte[] utf8 = new byte[dataStart() + end(field.ordinal()) - start];
+
+        buffer.get(start, utf8);
+
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    public boolean isNull(BookingField field){
+        int index = field.ordinal();
+
+        if(index >= fieldCount){
+            return true;
+        }
+
+        return (buffer.get(offset + BookingCodec.HEADER_SIZE + (index >> 3)) & (1 << (index & 7))) != 0;
+    }
+
+    private int start(int fieldIndex){
+        return dataStart() + (fieldIndex == 0 ? 0 : end(fieldIndex - 1));
+    }
+
+    // total encoded size of the record, including fields unknown to this reader
+    public int size(){
+        return dataStart() - offset + (fieldCount == 0 ? 0 : end(fieldCount - 1));
+    }
+
+    private int end(int fieldIndex){
+        return Short.toUnsignedInt(buffer.getShort(offset + BookingCodec.HEADER_SIZE + nullBitmapSize + fieldIndex * 2));
+    }
+
+    private int dataStart(){
+        return offset + BookingCodec.HEADER_SIZE + nullBitmapSize + fieldCount * 2;
+    }
+}
+
+class BookingFailedException extends RuntimeException{
+    private static final long serialVersionUID = 1L;
+
+    public BookingFailedException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
+
+// steps of a booking saga in execution order, all of them can be undone;
+    // once the last one is done the booking is committed and the confirmation is sent outside the saga.
+enum SagaStep{
+    RESERVE_SEAT, PAYMENT, TICKET
+}
+
+// Durable append-only saga log, one line per event and forced to disk before the saga moves on:
+    //   <sagaId> BEGIN <booking encoded with BookingCodec, base64>
+    //   <sagaId> STARTED <step>         written before the step runs
+    //   <sagaId> DONE <step>             written after the step went through
+    //   <sagaId> COMPENSATED <step>
+    //   <sagaId> END COMPLETED|ABORTED
+// a saga without END was interrupted(crash, failed compensation or END write): recovery completes it when every
+    // step is DONE and compensates its started steps otherwise.
+// the log is owned by one SagaLog at a time(exclusive file lock), so no other process appends to it or recovers from it.
+class SagaLog implements Closeable{
+    private final Path file;
+
+    private final FileChannel channel;
+
+    // sagas begun through this log and not ended or given up yet, recovery leaves them alone
+    private final Set<String> live = ConcurrentHashMap.newKeySet();
+
+    public SagaLog(Path file) throws IOException{
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        try{
+            if(channel.tryLock() == null){
+                throw new IOException("saga log is in use:" + file);
+            }
+        } catch(OverlappingFileLockException ex){
+            channel.close();
+
+            throw new IOException("saga log is in use:" + file, ex);
+        } catch(IOException ex){
+            channel.close();
+
+            throw ex;
+        }
+
+        // a crash while appending leaves a torn last line; it was never acknowledged, so it is cut off
+        long end = lastLineEnd();
+
+        if(end < channel.size()){
+            channel.truncate(end);
+            channel.force(false);
+        }
+    }
+
+    private long lastLineEnd() throws IOException{
+        try(FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer chunk = ByteBuffer.allocate(4096);
+            long end = reader.size();
+
+            while(end > 0){
+                long from = Math.max(0, end - chunk.capacity());
+
+                chunk.clear().limit((int)(end - from));
+                reader.read(chunk, from);
+
+                for(int i = chunk.position() - 1; i >= 0; i--){
+                    if(chunk.get(i) == '\n'){
+                        return from + i + 1;
+                    }
+                }
+
+                end = from;
+            }
+
+            return 0;
+        }
+    }
+
+    public void begin(String sagaId, Booking booking){
+        ByteBuffer encoded = ByteBuffer.allocate(BookingCodec.MAX_SIZE);
+
+        BookingCodec.encode(booking, encoded);
+        encoded.flip();
+
+        live.add(sagaId);
+
+        try{
+            append(sagaId + " BEGIN " + Base64.getEncoder().encodeToString(Arrays.copyOf(encoded.array(), encoded.limit())));
+        } catch(RuntimeException ex){
+            live.remove(sagaId);
+
+            throw ex;
+        }
+    }
+
+    public void started(String sagaId, SagaStep step){
+        append(sagaId + " STARTED " + step);
+    }
+
+    public void done(String sagaId, SagaStep step){
+        append(sagaId + " DONE " + step);
+    }
+
+    public void compensated(String sagaId, SagaStep step){
+        append(sagaId + " COMPENSATED " + step);
+    }
+
+    public void end(String sagaId, boolean completed){
+        append(sagaId + " END " + (completed ? "COMPLETED" : "ABORTED"));
+
+        live.remove(sagaId);
+    }
+
+    // the saga is left open(e.g. a compensation failed), the next recovery takes it over
+    public void detach(String sagaId){
+        live.remove(sagaId);
+    }
+
+    private synchronized void append(String line){
+        try{
+            ByteBuffer bytes = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+
+            while(bytes.hasRemaining()){
+                channel.write(bytes);
+            }
+
+            channel.force(false);
+        } catch(IOException ex){
+            throw new UncheckedIOException("Exception while writing saga log", ex);
+        }
+    }
+
+    // state of every saga that has no END yet and is not run by this log, in log order
+    public synchronized Map<String, OpenSaga> openSagas() throws IOException{
+        Map<String, OpenSaga> open = new LinkedHashMap<>();
+
+        for(String line: Files.readAllLines(file, StandardCharsets.UTF_8)){
+            String[] fields = line.split(" ", 3);
+
+            // unparseable lines(a corrupted record) are skipped instead of failing recovery
+            if(fields.length < 3){
+                continue;
+            }
+
+            try{
+                OpenSaga saga = open.get(fields[0]);
+
+                switch(fields[1]){
+                    case "BEGIN":
+                        open.put(fields[0], new OpenSaga(BookingCodec.decode(ByteBuffer.wrap(Base64.getDecoder().decode(fields[2])))));
+                        break;
+                    case "STARTED":
+                        if(saga != null){
+                            saga.started.add(SagaStep.valueOf(fields[2]));
+                        }
+                        break;
+                    case "COMPENSATED":
+                        if(saga != null){
+                            saga.started.remove(SagaStep.valueOf(fields[2]));
+                        }
+                        break;
+                    case "END":
+                        open.remove(fields[0]);
+                        break;
+                    case "DONE":
+                        if(saga != null){
+                            saga.done.add(SagaStep.valueOf(fields[2]));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } catch(IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException ex){
+                continue;
+            }
+        }
+
+        open.keySet().removeAll(live);
+
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+
+    static class OpenSaga{
+        final Booking booking;
+
+        // started steps that are not compensated yet, including ones that may have half completed
+        final EnumSet<SagaStep> started = EnumSet.noneOf(SagaStep.class);
+
+        final EnumSet<SagaStep> done = EnumSet.noneOf(SagaStep.class);
+
+        // every step went through, only the END record is missing
+        boolean committed(){
+            return done.size() == SagaStep.values().length;
+        }
+
+        OpenSaga(Booking booking){
+            this.booking = booking;
+        }
+    }
+}
+
+// Saga executor for the booking flow:
+    // every step is logged as started before it runs, when a step fails the started ones(the failed one included,
+    // it may have half completed e.g. a timed out charge) are undone in reverse(cancel ticket, refund, release seat)
+    // and logged as well, so a retry never leaks seats or money. compensations carry the saga id as idempotency key.
+    // once every step is done the booking is committed(END may be left to recovery), nothing undoes it after that.
+class BookingSaga{
+    private final PaymentService paymentService;
+    private final SeatReservationService seatReservationService;
+    private final TicketService ticketService;
+    private final NotificationService notificationService;
+    private final SagaLog sagaLog;
+
+    public BookingSaga(PaymentService paymentService, SeatReservationService seatReservationService, TicketService ticketService, NotificationService notificationService, SagaLog sagaLog){
+        this.paymentService = paymentService;
+        this.seatReservationService = seatReservationService;
+        this.ticketService = ticketService;
+        this.notificationService = notificationService;
+        this.sagaLog = sagaLog;
+    }
+
+    public void execute(Booking booking){
+        String sagaId = UUID.randomUUID().toString();
+        EnumSet<SagaStep> started = EnumSet.noneOf(SagaStep.class);
+
+        sagaLog.begin(sagaId, booking);
+
+        SagaStep current = null;
+
+        try{
+            for(SagaStep step: SagaStep.values()){
+                current = step;
+
+                sagaLog.started(sagaId, step);
+                started.add(step);
+
+                run(step, booking);
+
+                sagaLog.done(sagaId, step);
+            }
+        } catch(RuntimeException ex){
+            compensate(sagaId, booking, started);
+
+            throw new BookingFailedException("booking " + booking.bookingID + " failed at " + current + ", completed steps were undone", ex);
+        }
+
+        complete(sagaId, booking);
+    }
+
+    // compensates what interrupted sagas left behind, to be called once on start up before bookings are taken;
+        // sagas run through this log in the meantime are never touched.
+    public int recover() throws IOException{
+        Map<String, SagaLog.OpenSaga> open = sagaLog.openSagas();
+
+        for(Map.Entry<String, SagaLog.OpenSaga> saga: open.entrySet()){
+            System.out.println("Recovering booking:" + saga.getValue().booking.bookingID);
+
+            // every step is done, only END is missing: the booking stands(the confirmation may be sent twice)
+            if(saga.getValue().committed()){
+                complete(saga.getKey(), saga.getValue().booking);
+            } else {
+                compensate(saga.getKey(), saga.getValue().booking, saga.getValue().started);
+            }
+        }
+
+        return open.size();
+    }
+
+    // a failed write here leaves the saga open with every step done, recovery completes it instead of undoing it
+    private void complete(String sagaId, Booking booking){
+        try{
+            sagaLog.end(sagaId, true);
+        } catch(RuntimeException ex){
+            System.out.println("Exception while completing booking:" + booking.bookingID + " " + ex.getMessage());
+
+            sagaLog.detach(sagaId);
+        }
+
+        try{
+            notificationService.sendBookingConfirmation(booking.userEmail);
+        } catch(RuntimeException ex){
+            // the booking stands, the confirmation can be resent
+            System.out.println("Exception while sending confirmation for booking:" + booking.bookingID + " " + ex.getMessage());
+        }
+    }
+
+    private void compensate(String sagaId, Booking booking, EnumSet<SagaStep> started){
+        List<SagaStep> steps = new ArrayList<>(started);
+        Collections.reverse(steps);
+
+        try{
+            for(SagaStep step: steps){
+                undo(step, booking, sagaId);
+
+                sagaLog.compensated(sagaId, step);
+            }
+
+            sagaLog.end(sagaId, false);
+        } catch(RuntimeException ex){
+            // saga stays open in the log, recovery retries the remaining compensations
+            System.out.println("Exception while compensating booking:" + booking.bookingID + " " + ex.getMessage());
+
+            sagaLog.detach(sagaId);
+        }
+    }
+
+    private void run(SagaStep step, Booking booking){
+        switch(step){
+            case RESERVE_SEAT:
+                seatReservationService.reserveSeat(booking.movieID, booking.seatNumber);
+                break;
+            case PAYMENT:
+                paymentService.makePayment(booking.bookingID, booking.amount);
+                break;
+            case TICKET:
+                ticketService.generateTicket(booking.movieID, booking.seatNumber);
+                break;
+        }
+    }
+
+    private void undo(SagaStep step, Booking booking, String sagaId){
+        switch(step){
+            case RESERVE_SEAT:
+                seatReservationService.releaseSeat(booking.bookingID, booking.movieID, booking.seatNumber, sagaId);
+                break;
+            case PAYMENT:
+                paymentService.refundPayment(booking.bookingID, booking.amount, sagaId);
+                break;
+            case TICKET:
+                ticketService.cancelTicket(booking.bookingID, booking.movieID, booking.seatNumber, sagaId);
+                break;
+        }
+    }
+}
+
 // Facade Class with Builder
 class MovieFacadeWithBuilder{
     private PaymentService paymentService;
     private NotificationService notificationService;
     private TicketService ticketService;
     private SeatReservationService seatReservationService;
+    private BookingOrchestrator bookingOrchestrator;
+    private BookingSaga bookingSaga;
 
     public MovieFacadeWithBuilder(){
         // can be done using dependency injection instead of object creation in constructor.
@@ -134,6 +884,18 @@ class MovieFacadeWithBuilder{
         this.seatReservationService = new SeatReservationService();
         this.notificationService = new NotificationService();
         this.ticketService = new TicketService();
+        this.bookingOrchestrator = new BookingOrchestrator(paymentService, seatReservationService, ticketService, notificationService);
+    }
+
+    // saga mode: bookings are logged to the given log, call recoverBookings() once on start up
+    public MovieFacadeWithBuilder(PaymentService paymentService, SeatReservationService seatReservationService,
+            TicketService ticketService, NotificationService notificationService, SagaLog sagaLog){
+        this.paymentService = paymentService;
+        this.seatReservationService = seatReservationService;
+        this.notificationService = notificationService;
+        this.ticketService = ticketService;
+        this.bookingOrchestrator = new BookingOrchestrator(paymentService, seatReservationService, ticketService, notificationService);
+        this.bookingSaga = new BookingSaga(paymentService, seatReservationService, ticketService, notificationService, sagaLog);
     }
 
     public void bookMovieTicket(Booking booking){
@@ -142,6 +904,29 @@ class MovieFacadeWithBuilder{
         ticketService.generateTicket(booking.movieID, booking.seatNumber);
         notificationService.sendBookingConfirmation(booking.userEmail);
     }
+
+    // orchestrated mode: independent steps run concurrently, completes with per step latency
+    public CompletableFuture<BookingReport> bookMovieTicketAsync(Booking booking){
+        return bookingOrchestrator.book(booking);
+    }
+
+    // a failed booking is rolled back(seat released, payment refunded) before BookingFailedException is thrown
+    public void bookMovieTicketWithSaga(Booking booking){
+        sagaMode().execute(booking);
+    }
+
+    // compensates the bookings a previous run left unfinished in the saga log, returns how many
+    public int recoverBookings() throws IOException{
+        return sagaMode().recover();
+    }
+
+    private BookingSaga sagaMode(){
+        if(bookingSaga == null){
+            throw new IllegalStateException("facade was created without a saga log");
+        }
+
+        return bookingSaga;
+    }
 }
 
 public class Facade {
@@ -161,5 +946,120 @@ public class Facade {
         MovieFacade movieFacade2 = new MovieFacade();
 
         movieFacade2.bookMovieTicket("ID123", 100, "M001", "K12", "user@abc.com");
+
+        System.out.println(movieFacade.bookMovieTicketAsync(booking).join());
+
+        // ticket generation fails after the payment went through: seat and payment are compensated
+        TicketService failingTicketService = new TicketService(){
+            @Override
+            public void generateTicket(String movieId, String seatNumber){
+                throw new IllegalStateException("ticket printer offline");
+            }
+        };
+
+        try(SagaLog sagaLog = new SagaLog(Files.createTempFile("booking-saga", ".log"))){
+            MovieFacadeWithBuilder sagaFacade = new MovieFacadeWithBuilder(new PaymentService(), new SeatReservationService(),
+                failingTicketService, new NotificationService(), sagaLog);
+
+            sagaFacade.recoverBookings();
+            sagaFacade.bookMovieTicketWithSaga(booking);
+        } catch(BookingFailedException ex){
+            System.out.println(ex.getMessage());
+        } catch(IOException ex){
+            System.out.println("Exception while opening saga log:" + ex.getMessage());
+        }
+    }
+}
+
+// Round trip check and throughput of the binary codec against toString() and Java serialization:
+    // java BookingCodecBenchmark [bookings]
+class BookingCodecBenchmark{
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Booking[] bookings = new Booking[count];
+
+        for(int i = 0; i < count; i++){
+            bookings[i] = new Booking.Builder()
+                .withBookingID("ID" + i)
+                .withAmount(100 + i % 50)
+                .withMovieID("M" + i % 100)
+                .withSeatNumber("K" + i % 30)
+                .withUserEmail("user" + i + "@abc.com")
+                .build();
+        }
+
+        // round trip
+        ByteBuffer buffer = ByteBuffer.allocateDirect(count * 64);
+
+        long start = System.nanoTime();
+
+        for(Booking booking: bookings){
+            BookingCodec.encode(booking, buffer);
+        }
+
+        long encodeNanos = System.nanoTime() - start;
+        int encodedBytes = buffer.position();
+
+        buffer.flip();
+        Booking[] decoded = new Booking[count];
+        start = System.nanoTime();
+
+        for(int i = 0; i < count; i++){
+            decoded[i] = BookingCodec.decode(buffer);
+        }
+
+        long decodeNanos = System.nanoTime() - start;
+
+        for(int i = 0; i < count; i++){
+            if(!decoded[i].bookingID.equals(bookings[i].bookingID) || decoded[i].amount != bookings[i].amount
+                    || !decoded[i].movieID.equals(bookings[i].movieID) || !decoded[i].seatNumber.equals(bookings[i].seatNumber)
+                    || !decoded[i].userEmail.equals(bookings[i].userEmail)){
+                throw new IllegalStateException("round trip mismatch at:" + i);
+            }
+        }
+
+        // zero-copy read of a single field, e.g. routing by movie without decoding the booking
+        BookingView first = new BookingView(buffer, 0);
+
+        if(!first.string(BookingField.MOVIE_ID).equals(bookings[0].movieID)){
+            throw new IllegalStateException("view mismatch");
+        }
+
+        // toString
+        start = System.nanoTime();
+        long characters = 0;
+
+        for(Booking booking: bookings){
+            characters += booking.toString().length();
+        }
+
+        long toStringNanos = System.nanoTime() - start;
+
+        // Java serialization
+        start = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)){
+            for(Booking booking: bookings){
+                out.writeObject(booking);
+            }
+        }
+
+        long serializeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))){
+            for(int i = 0; i < count; i++){
+                in.readObject();
+            }
+        }
+
+        long deserializeNanos = System.nanoTime() - start;
+
+        System.out.println("round trip ok for " + count + " bookings");
+        System.out.println("binary   encode(ms):" + encodeNanos / 1_000_000 + " decode(ms):" + decodeNanos / 1_000_000 + " bytes:" + encodedBytes);
+        System.out.println("toString (ms):" + toStringNanos / 1_000_000 + " chars:" + characters);
+        System.out.println("java serialization write(ms):" + serializeNanos / 1_000_000 + " read(ms):" + deserializeNanos / 1_000_000 + " bytes:" + bytes.size());
     }
 }